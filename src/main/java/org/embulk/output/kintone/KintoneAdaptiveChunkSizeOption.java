@@ -0,0 +1,31 @@
+package org.embulk.output.kintone;
+
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+import org.embulk.util.config.Task;
+
+public interface KintoneAdaptiveChunkSizeOption extends Task {
+  @Config("min_size")
+  @ConfigDefault("10")
+  Integer getMinSize();
+
+  @Config("max_size")
+  @ConfigDefault("100")
+  Integer getMaxSize();
+
+  @Config("target_latency_millis")
+  @ConfigDefault("3000")
+  Long getTargetLatencyMillis();
+
+  @Config("increase_step")
+  @ConfigDefault("10")
+  Integer getIncreaseStep();
+
+  @Config("decrease_factor")
+  @ConfigDefault("0.5")
+  Double getDecreaseFactor();
+
+  @Config("window_size")
+  @ConfigDefault("20")
+  Integer getWindowSize();
+}
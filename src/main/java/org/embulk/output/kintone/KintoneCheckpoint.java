@@ -0,0 +1,173 @@
+package org.embulk.output.kintone;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.embulk.config.ConfigException;
+import org.embulk.output.kintone.dispatcher.DispatchException;
+import org.embulk.output.kintone.util.LongHashSet;
+
+/**
+ * Keeps the number of input records of a task whose chunks kintone acknowledged, and the positions
+ * of the input records inserted after them, so that a resumed task skips the input records already
+ * written.
+ */
+public class KintoneCheckpoint {
+  private final File file;
+  private final File addedFile;
+  private final long committed;
+  private final LongHashSet added;
+
+  private KintoneCheckpoint(File file, File addedFile, long committed, LongHashSet added) {
+    this.file = file;
+    this.addedFile = addedFile;
+    this.committed = committed;
+    this.added = added;
+  }
+
+  public static KintoneCheckpoint open(PluginTask task, int taskIndex) {
+    String name = String.format("%s-%d", getPrefix(task), taskIndex);
+    File file = new File(getDirectory(task), name + ".checkpoint");
+    File addedFile = new File(getDirectory(task), name + ".added");
+    return new KintoneCheckpoint(file, addedFile, read(file), readAdded(addedFile));
+  }
+
+  /** Returns the number of input records a previous attempt of the task has written. */
+  public long getCommitted() {
+    return committed;
+  }
+
+  /** Returns whether a previous attempt of the task has written the input record at position. */
+  public boolean isCommitted(long position) {
+    return position < committed || added.contains(position);
+  }
+
+  /** Appends the positions of input records kintone inserted after the last saved position. */
+  public synchronized void add(List<Long> positions) {
+    if (positions.isEmpty()) {
+      return;
+    }
+    try (DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(addedFile, true)))) {
+      for (long position : positions) {
+        output.writeLong(position);
+      }
+    } catch (IOException e) {
+      throw new DispatchException(e);
+    }
+  }
+
+  /**
+   * Replaces the position, then drops the positions added before it, keeping those a previous
+   * attempt added beyond it. A failure in between also leaves positions below the saved one, which
+   * are skipped anyway.
+   */
+  public synchronized void save(long position) {
+    List<Long> later = new ArrayList<>();
+    added.forEach(
+        value -> {
+          if (value >= position) {
+            later.add(value);
+          }
+        });
+    try {
+      replace(file, Collections.singletonList(position));
+      if (later.isEmpty()) {
+        Files.deleteIfExists(addedFile.toPath());
+      } else {
+        replace(addedFile, later);
+      }
+    } catch (IOException e) {
+      throw new DispatchException(e);
+    }
+  }
+
+  /** Deletes the checkpoints of every task of the transaction. */
+  public static void delete(PluginTask task) {
+    String prefix = getPrefix(task) + "-";
+    File[] files = getDirectory(task).listFiles((dir, name) -> name.startsWith(prefix));
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      try {
+        Files.deleteIfExists(file.toPath());
+      } catch (IOException e) {
+        throw new DispatchException(e);
+      }
+    }
+  }
+
+  private static void replace(File file, List<Long> values) throws IOException {
+    File temp =
+        File.createTempFile(file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+    try {
+      try (DataOutputStream output =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+        for (long value : values) {
+          output.writeLong(value);
+        }
+      }
+      Files.move(
+          temp.toPath(),
+          file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp.toPath());
+    }
+  }
+
+  private static long read(File file) {
+    if (!file.exists()) {
+      return 0;
+    }
+    try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+      return input.readLong();
+    } catch (IOException e) {
+      throw new DispatchException(e);
+    }
+  }
+
+  private static LongHashSet readAdded(File file) {
+    LongHashSet added = new LongHashSet();
+    if (!file.exists()) {
+      return added;
+    }
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      while (true) {
+        added.add(input.readLong());
+      }
+    } catch (EOFException e) {
+      // A position cut short by a failure was not recorded, so its record is sent again
+      return added;
+    } catch (IOException e) {
+      throw new DispatchException(e);
+    }
+  }
+
+  private static String getPrefix(PluginTask task) {
+    return String.format(
+        "%s-%d-%s", task.getDomain(), task.getAppId(), task.getCheckpointId().get());
+  }
+
+  private static File getDirectory(PluginTask task) {
+    File directory = new File(task.getCheckpointDirectory().get());
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new ConfigException(String.format("Failed to create %s", directory));
+    }
+    return directory;
+  }
+}
@@ -0,0 +1,31 @@
+package org.embulk.output.kintone;
+
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+import org.embulk.util.config.Task;
+
+public interface KintoneCircuitBreakerOption extends Task {
+  @Config("window_seconds")
+  @ConfigDefault("10")
+  Integer getWindowSeconds();
+
+  @Config("min_requests")
+  @ConfigDefault("20")
+  Integer getMinRequests();
+
+  @Config("lock_error_rate")
+  @ConfigDefault("0.2")
+  Double getLockErrorRate();
+
+  @Config("open_millis")
+  @ConfigDefault("5000")
+  Long getOpenMillis();
+
+  @Config("half_open_requests")
+  @ConfigDefault("1")
+  Integer getHalfOpenRequests();
+
+  @Config("ramp_up_steps")
+  @ConfigDefault("4")
+  Integer getRampUpSteps();
+}
@@ -1,12 +1,17 @@
 package org.embulk.output.kintone;
 
+import com.kintone.client.BulkRequestClient;
 import com.kintone.client.KintoneClientBuilder;
 import com.kintone.client.RecordClient;
 import com.kintone.client.model.app.field.FieldProperty;
 import com.kintone.client.model.record.FieldType;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 import org.embulk.config.ConfigException;
 import org.embulk.output.kintone.record.Id;
 import org.embulk.output.kintone.util.Lazy;
@@ -16,9 +21,12 @@ import org.embulk.spi.type.Type;
 import org.embulk.spi.type.Types;
 
 public class KintoneClient implements AutoCloseable {
+  private static final Map<List<Object>, Shared> SHARED = new HashMap<>();
   private final PluginTask task;
   private final Schema schema;
+  private final Shared shared;
   private final com.kintone.client.KintoneClient client;
+  private final Map<String, FieldType> fieldTypes;
   private final Map<String, FieldProperty> fields;
 
   public static Lazy<KintoneClient> lazy(Supplier<PluginTask> task, Schema schema) {
@@ -33,23 +41,21 @@ public class KintoneClient implements AutoCloseable {
   private KintoneClient(PluginTask task, Schema schema) {
     this.task = task;
     this.schema = schema;
-    KintoneClientBuilder builder = KintoneClientBuilder.create("https://" + task.getDomain());
-    if (task.getGuestSpaceId().isPresent()) {
-      builder.setGuestSpaceId(task.getGuestSpaceId().get());
-    }
-    if (task.getBasicAuthUsername().isPresent() && task.getBasicAuthPassword().isPresent()) {
-      builder.withBasicAuth(task.getBasicAuthUsername().get(), task.getBasicAuthPassword().get());
+    shared = acquire(task);
+    client = shared.client;
+    fieldTypes = task.getFieldTypes();
+    if (fieldTypes != null) {
+      // Fetched and validated once in transaction
+      fields = null;
+      return;
     }
-    if (task.getUsername().isPresent() && task.getPassword().isPresent()) {
-      builder.authByPassword(task.getUsername().get(), task.getPassword().get());
-    } else if (task.getToken().isPresent()) {
-      builder.authByApiToken(task.getToken().get());
-    } else {
-      throw new ConfigException("Username and password or token must be configured.");
+    try {
+      fields = shared.getFields(task.getAppId());
+      KintoneMode.of(task).validate(task, this);
+    } catch (RuntimeException e) {
+      release(shared);
+      throw e;
     }
-    client = builder.build();
-    fields = client.app().getFormFields(task.getAppId());
-    KintoneMode.of(task).validate(task, this);
   }
 
   public void validateIdOrUpdateKey(String columnName) {
@@ -69,23 +75,106 @@ public class KintoneClient implements AutoCloseable {
   }
 
   public FieldType getFieldType(String fieldCode) {
+    if (fieldTypes != null) {
+      return fieldTypes.get(fieldCode);
+    }
     FieldProperty field = fields.get(fieldCode);
     return field == null ? null : field.getType();
   }
 
+  /** Returns the types of the fields the columns are written to, including derived subtables. */
+  public Map<String, FieldType> getFieldTypes() {
+    Map<String, FieldType> fieldTypes = new HashMap<>();
+    schema.getColumns().stream()
+        .map(Column::getName)
+        .flatMap(name -> Stream.of(name, name.replaceFirst("\\..*$", "")))
+        .distinct()
+        .map(this::getFieldCode)
+        .forEach(
+            fieldCode -> {
+              FieldType fieldType = getFieldType(fieldCode);
+              if (fieldType != null) {
+                fieldTypes.put(fieldCode, fieldType);
+              }
+            });
+    return fieldTypes;
+  }
+
+  public String getUpdatedTimeFieldCode() {
+    return fields.values().stream()
+        .filter(field -> field.getType() == FieldType.UPDATED_TIME)
+        .map(FieldProperty::getCode)
+        .findFirst()
+        .orElseThrow(() -> new ConfigException("The updated time field does not exist."));
+  }
+
   public RecordClient record() {
     return client.record();
   }
 
+  public BulkRequestClient bulkRequests() {
+    return client.bulkRequests();
+  }
+
   @Override
   public void close() {
+    release(shared);
+  }
+
+  /**
+   * Returns the client shared by the tasks connecting to the same app with the same credentials,
+   * so that they reuse the connection pool.
+   */
+  private static synchronized Shared acquire(PluginTask task) {
+    List<Object> key =
+        Arrays.asList(
+            task.getDomain(),
+            task.getGuestSpaceId().orElse(null),
+            task.getUsername().orElse(null),
+            task.getPassword().orElse(null),
+            task.getToken().orElse(null),
+            task.getBasicAuthUsername().orElse(null),
+            task.getBasicAuthPassword().orElse(null),
+            task.getAppId());
+    Shared shared = SHARED.get(key);
+    if (shared == null) {
+      shared = new Shared(key, build(task));
+      SHARED.put(key, shared);
+    }
+    shared.references++;
+    return shared;
+  }
+
+  private static synchronized void release(Shared shared) {
+    if (--shared.references > 0) {
+      return;
+    }
+    SHARED.remove(shared.key);
     try {
-      client.close();
+      shared.client.close();
     } catch (IOException e) {
       throw new RuntimeException("kintone throw exception", e);
     }
   }
 
+  private static com.kintone.client.KintoneClient build(PluginTask task) {
+    KintoneClientBuilder builder = KintoneClientBuilder.create("https://" + task.getDomain());
+    if (task.getGuestSpaceId().isPresent()) {
+      builder.setGuestSpaceId(task.getGuestSpaceId().get());
+    }
+    if (task.getBasicAuthUsername().isPresent() && task.getBasicAuthPassword().isPresent()) {
+      builder.withBasicAuth(task.getBasicAuthUsername().get(), task.getBasicAuthPassword().get());
+    }
+    if (task.getUsername().isPresent() && task.getPassword().isPresent()) {
+      builder.authByPassword(task.getUsername().get(), task.getPassword().get());
+    } else if (task.getToken().isPresent()) {
+      builder.authByApiToken(task.getToken().get());
+    } else {
+      throw new ConfigException("Username and password or token must be configured.");
+    }
+    return builder.build();
+  }
+
   private void validateId(Column column) {
     if (!column.getName().equals(Id.FIELD)) {
       return;
@@ -100,7 +189,7 @@ public class KintoneClient implements AutoCloseable {
     if (column.getName().equals(Id.FIELD)) {
       return;
     }
-    String fieldCode = getFieldCode(column);
+    String fieldCode = getFieldCode(column.getName());
     FieldType fieldType = getFieldType(fieldCode);
     if (fieldType == null) {
       throw new ConfigException("The field '" + fieldCode + "' for update does not exist.");
@@ -110,8 +199,27 @@ public class KintoneClient implements AutoCloseable {
     }
   }
 
-  private String getFieldCode(Column column) {
-    KintoneColumnOption option = task.getColumnOptions().get(column.getName());
-    return option != null ? option.getFieldCode() : column.getName();
+  public String getFieldCode(String columnName) {
+    KintoneColumnOption option = task.getColumnOptions().get(columnName);
+    return option != null ? option.getFieldCode() : columnName;
+  }
+
+  private static class Shared {
+    private final List<Object> key;
+    private final com.kintone.client.KintoneClient client;
+    private Map<String, FieldProperty> fields;
+    private int references;
+
+    private Shared(List<Object> key, com.kintone.client.KintoneClient client) {
+      this.key = key;
+      this.client = client;
+    }
+
+    private synchronized Map<String, FieldProperty> getFields(long app) {
+      if (fields == null) {
+        fields = client.app().getFormFields(app);
+      }
+      return fields;
+    }
   }
 }
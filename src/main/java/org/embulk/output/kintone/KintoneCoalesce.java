@@ -0,0 +1,36 @@
+package org.embulk.output.kintone;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.kintone.client.model.record.Record;
+
+public enum KintoneCoalesce {
+  NONE {
+    @Override
+    public Record merge(Record older, Record newer) {
+      throw new UnsupportedOperationException("Duplicates are not coalesced");
+    }
+  },
+  LAST {
+    @Override
+    public Record merge(Record older, Record newer) {
+      return newer;
+    }
+  },
+  MERGE {
+    @Override
+    public Record merge(Record older, Record newer) {
+      Record merged = new Record();
+      older.getFieldCodes(true).forEach(code -> merged.putField(code, older.getFieldValue(code)));
+      newer.getFieldCodes(true).forEach(code -> merged.putField(code, newer.getFieldValue(code)));
+      return merged;
+    }
+  };
+
+  /** Returns the record replacing the two records of the same id or update key. */
+  public abstract Record merge(Record older, Record newer);
+
+  @JsonCreator
+  public static KintoneCoalesce of(String name) {
+    return valueOf(name.toUpperCase());
+  }
+}
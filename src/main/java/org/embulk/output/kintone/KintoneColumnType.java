@@ -33,6 +33,7 @@ import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 import org.embulk.output.kintone.deserializer.Deserializer;
 import org.embulk.spi.time.Timestamp;
@@ -163,6 +164,15 @@ public enum KintoneColumnType {
       return ValueFactory.newString(((NumberFieldValue) value).getValue().toPlainString());
     }
 
+    @Override
+    public boolean isSame(FieldValue value, FieldValue other) {
+      BigDecimal number = value == null ? null : ((NumberFieldValue) value).getValue();
+      BigDecimal otherNumber = other == null ? null : ((NumberFieldValue) other).getValue();
+      return number == null || otherNumber == null
+          ? number == otherNumber
+          : number.compareTo(otherNumber) == 0;
+    }
+
     @Override
     protected List<Type> getSupportedTypes() {
       return Arrays.asList(Types.BOOLEAN, Types.LONG, Types.DOUBLE, Types.TIMESTAMP);
@@ -443,6 +453,15 @@ public enum KintoneColumnType {
       return ValueFactory.newString(((DateTimeFieldValue) value).getValue().toString());
     }
 
+    @Override
+    public boolean isSame(FieldValue value, FieldValue other) {
+      ZonedDateTime dateTime = value == null ? null : ((DateTimeFieldValue) value).getValue();
+      ZonedDateTime otherDateTime = other == null ? null : ((DateTimeFieldValue) other).getValue();
+      return dateTime == null || otherDateTime == null
+          ? dateTime == otherDateTime
+          : dateTime.isEqual(otherDateTime);
+    }
+
     @Override
     protected List<Type> getSupportedTypes() {
       return Arrays.asList(Types.LONG, Types.DOUBLE, Types.TIMESTAMP);
@@ -577,6 +596,11 @@ public enum KintoneColumnType {
 
   public abstract Value asValue(FieldValue value);
 
+  /** Returns whether the two values of a field of this type are the same to kintone. */
+  public boolean isSame(FieldValue value, FieldValue other) {
+    return Objects.equals(value, other);
+  }
+
   protected abstract List<Type> getSupportedTypes();
 
   private static List<String> asList(String value, KintoneColumnOption option) {
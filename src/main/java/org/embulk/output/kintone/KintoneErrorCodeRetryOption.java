@@ -0,0 +1,20 @@
+package org.embulk.output.kintone;
+
+import java.util.Optional;
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+import org.embulk.util.config.Task;
+
+public interface KintoneErrorCodeRetryOption extends Task {
+  @Config("limit")
+  @ConfigDefault("null")
+  Optional<Integer> getLimit();
+
+  @Config("initial_wait_millis")
+  @ConfigDefault("null")
+  Optional<Integer> getInitialWaitMillis();
+
+  @Config("max_wait_millis")
+  @ConfigDefault("null")
+  Optional<Integer> getMaxWaitMillis();
+}
@@ -0,0 +1,13 @@
+package org.embulk.output.kintone;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+public enum KintoneLookupStrategy {
+  CURSOR,
+  KEYSET;
+
+  @JsonCreator
+  public static KintoneLookupStrategy of(String name) {
+    return valueOf(name.toUpperCase());
+  }
+}
@@ -20,6 +20,24 @@ public enum KintoneMode {
       output.insertPage(page);
     }
   },
+  REPLACE("replace") {
+    @Override
+    public void validate(PluginTask task, KintoneClient client) {
+      if (task.getUpdateKeyName().isPresent()) {
+        throw new ConfigException("When mode is replace, require no update_key.");
+      }
+    }
+
+    @Override
+    public void prepare(PluginTask task, KintoneClient client) {
+      KintoneRecordDeleter.deleteAll(task, client);
+    }
+
+    @Override
+    public void add(Page page, Skip skip, KintonePageOutput output) {
+      output.insertPage(page);
+    }
+  },
   UPDATE("update") {
     @Override
     public void validate(PluginTask task, KintoneClient client) {
@@ -42,12 +60,37 @@ public enum KintoneMode {
         throw new ConfigException("When mode is upsert, require update_key or id column.");
       }
       client.validateIdOrUpdateKey(task.getUpdateKeyName().orElse(Id.FIELD));
+      if (task.getUpsertStrategy() == KintoneUpsertStrategy.NATIVE) {
+        if (!task.getUpdateKeyName().isPresent()
+            || task.getSkipIfNonExistingIdOrUpdateKey() == Skip.ALWAYS) {
+          throw new ConfigException(
+              "When upsert_strategy is native, require update_key and"
+                  + " skip_if_non_existing_id_or_update_key other than always.");
+        }
+        if (task.getSkipUnchanged()) {
+          throw new ConfigException("When upsert_strategy is native, require no skip_unchanged.");
+        }
+      }
     }
 
     @Override
     public void add(Page page, Skip skip, KintonePageOutput output) {
       output.upsertPage(page);
     }
+  },
+  DELETE("delete") {
+    @Override
+    public void validate(PluginTask task, KintoneClient client) {
+      if (!task.getUpdateKeyName().isPresent() && client.getColumn(Id.FIELD) == null) {
+        throw new ConfigException("When mode is delete, require update_key or id column.");
+      }
+      client.validateIdOrUpdateKey(task.getUpdateKeyName().orElse(Id.FIELD));
+    }
+
+    @Override
+    public void add(Page page, Skip skip, KintonePageOutput output) {
+      output.deletePage(page);
+    }
   };
   private final String value;
 
@@ -57,6 +100,9 @@ public enum KintoneMode {
 
   public abstract void validate(PluginTask task, KintoneClient client);
 
+  /** Runs once in the transaction before the tasks. */
+  public void prepare(PluginTask task, KintoneClient client) {}
+
   public abstract void add(Page page, Skip skip, KintonePageOutput output);
 
   @Override
@@ -0,0 +1,13 @@
+package org.embulk.output.kintone;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+public enum KintoneOnRecordError {
+  ABORT,
+  DEAD_LETTER;
+
+  @JsonCreator
+  public static KintoneOnRecordError of(String name) {
+    return valueOf(name.toUpperCase());
+  }
+}
@@ -2,10 +2,14 @@ package org.embulk.output.kintone;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 import org.embulk.config.ConfigDiff;
+import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
 import org.embulk.config.TaskReport;
 import org.embulk.config.TaskSource;
+import org.embulk.output.kintone.index.PersistentLedger;
 import org.embulk.output.kintone.reducer.ReducedPageOutput;
 import org.embulk.output.kintone.reducer.Reducer;
 import org.embulk.spi.OutputPlugin;
@@ -26,28 +30,86 @@ public class KintoneOutputPlugin implements OutputPlugin {
       ConfigSource config, Schema schema, int taskCount, OutputPlugin.Control control) {
     PluginTask task = CONFIG_MAPPER.map(config, PluginTask.class);
     task.setDerivedColumns(Collections.emptySet());
-    List<TaskReport> taskReports = control.run(task.dump());
-    return task.getReduceKeyName().isPresent()
-        ? new Reducer(task, schema)
-            .reduce(taskReports, schema.lookupColumn(task.getReduceKeyName().get()))
-        : CONFIG_MAPPER_FACTORY.newConfigDiff();
+    if (task.getCheckpointDirectory().isPresent() && task.getCheckpointInterval() < 1) {
+      throw new ConfigException("checkpoint_interval must be greater than 0.");
+    }
+    task.setCheckpointId(
+        task.getCheckpointDirectory().isPresent()
+            ? Optional.of(UUID.randomUUID().toString())
+            : Optional.empty());
+    prepare(task, schema);
+    return run(task, schema, control);
+  }
+
+  protected void prepare(PluginTask task, Schema schema) {
+    try (KintoneClient client = KintoneClient.lazy(() -> task, schema).get()) {
+      task.setFieldTypes(client.getFieldTypes());
+      KintoneMode.of(task).prepare(task, client);
+      prepareKeys(task, client);
+    }
+  }
+
+  private ConfigDiff run(PluginTask task, Schema schema, OutputPlugin.Control control) {
+    try {
+      List<TaskReport> taskReports = control.run(task.dump());
+      return task.getReduceKeyName().isPresent()
+          ? new Reducer(task, schema)
+              .reduce(taskReports, schema.lookupColumn(task.getReduceKeyName().get()))
+          : CONFIG_MAPPER_FACTORY.newConfigDiff();
+    } finally {
+      task.getUpsertKeyIndexFile().ifPresent(task.getUpsertKeyIndex()::cleanup);
+      task.getLedgerFile().ifPresent(PersistentLedger::merge);
+    }
+  }
+
+  /** Prepares the key index and the ledger, which are cleaned up at the end of every attempt. */
+  private static void prepareKeys(PluginTask task, KintoneClient client) {
+    KintoneMode mode = KintoneMode.of(task);
+    boolean isUpdating = mode == KintoneMode.UPDATE || mode == KintoneMode.UPSERT;
+    // Native upsert sends records without looking up their keys
+    boolean isLookingUp =
+        isUpdating
+            && !(mode == KintoneMode.UPSERT
+                && task.getUpsertStrategy() == KintoneUpsertStrategy.NATIVE);
+    task.setUpsertKeyIndexFile(
+        isLookingUp ? task.getUpsertKeyIndex().prepare(task, client) : Optional.empty());
+    task.setLedgerFile(
+        isUpdating && task.getLedgerDirectory().isPresent()
+            ? Optional.of(PersistentLedger.prepare(task, client))
+            : Optional.empty());
   }
 
   @Override
   public ConfigDiff resume(
       TaskSource taskSource, Schema schema, int taskCount, OutputPlugin.Control control) {
-    throw new UnsupportedOperationException("kintone output plugin does not support resuming");
+    PluginTask task = TASK_MAPPER.map(taskSource, PluginTask.class);
+    if (!task.getCheckpointId().isPresent()) {
+      throw new UnsupportedOperationException(
+          "kintone output plugin does not support resuming without checkpoint_directory");
+    }
+    // The mode is not prepared again, so that replace mode does not delete the written records
+    task.setFieldTypes(null);
+    try (KintoneClient client = KintoneClient.lazy(() -> task, schema).get()) {
+      task.setFieldTypes(client.getFieldTypes());
+      prepareKeys(task, client);
+    }
+    return run(task, schema, control);
   }
 
   @Override
   public void cleanup(
-      TaskSource taskSource, Schema schema, int taskCount, List<TaskReport> successTaskReports) {}
+      TaskSource taskSource, Schema schema, int taskCount, List<TaskReport> successTaskReports) {
+    PluginTask task = TASK_MAPPER.map(taskSource, PluginTask.class);
+    if (task.getCheckpointId().isPresent()) {
+      KintoneCheckpoint.delete(task);
+    }
+  }
 
   @Override
   public TransactionalPageOutput open(TaskSource taskSource, Schema schema, int taskIndex) {
     PluginTask task = TASK_MAPPER.map(taskSource, PluginTask.class);
     return task.getReduceKeyName().isPresent()
         ? new ReducedPageOutput(schema, taskIndex)
-        : new KintonePageOutput(task, schema);
+        : new KintonePageOutput(task, schema, taskIndex);
   }
 }
@@ -1,77 +1,221 @@
 package org.embulk.output.kintone;
 
-import static org.embulk.util.retryhelper.RetryExecutor.retryExecutor;
-
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Maps;
-import com.kintone.client.api.record.GetRecordsByCursorResponseBody;
+import com.kintone.client.api.bulk.BulkRequestsRequest;
+import com.kintone.client.api.record.GetRecordsRequest;
 import com.kintone.client.exception.KintoneApiRuntimeException;
 import com.kintone.client.model.record.FieldType;
+import com.kintone.client.model.record.FieldValue;
 import com.kintone.client.model.record.Record;
 import com.kintone.client.model.record.RecordForUpdate;
-import java.io.IOException;
+import com.kintone.client.model.record.UpdateKey;
+import java.io.File;
 import java.lang.invoke.MethodHandles;
-import java.math.BigDecimal;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.tuple.Pair;
+import org.embulk.config.ConfigException;
 import org.embulk.config.TaskReport;
+import org.embulk.output.kintone.dispatcher.ApiErrors;
+import org.embulk.output.kintone.dispatcher.AsyncRecordClient;
+import org.embulk.output.kintone.dispatcher.AsyncRetry;
+import org.embulk.output.kintone.dispatcher.Chunk;
+import org.embulk.output.kintone.dispatcher.ChunkSizeController;
+import org.embulk.output.kintone.dispatcher.CircuitBreaker;
+import org.embulk.output.kintone.dispatcher.DeadLetter;
+import org.embulk.output.kintone.dispatcher.Dispatcher;
+import org.embulk.output.kintone.dispatcher.DomainGovernor;
+import org.embulk.output.kintone.dispatcher.Lookup;
+import org.embulk.output.kintone.dispatcher.Pipeline;
+import org.embulk.output.kintone.dispatcher.RetryPolicies;
+import org.embulk.output.kintone.index.KeyCache;
+import org.embulk.output.kintone.index.KeyFilter;
+import org.embulk.output.kintone.index.KeyIndex;
+import org.embulk.output.kintone.index.KeyIndexBuilder;
+import org.embulk.output.kintone.index.KeyIndexFile;
+import org.embulk.output.kintone.index.KeyIndexPrefetcher;
+import org.embulk.output.kintone.index.KeySet;
+import org.embulk.output.kintone.index.Ledger;
+import org.embulk.output.kintone.index.PersistentKeyIndex;
+import org.embulk.output.kintone.index.PersistentLedger;
 import org.embulk.output.kintone.record.Id;
 import org.embulk.output.kintone.record.IdOrUpdateKey;
 import org.embulk.output.kintone.record.Skip;
 import org.embulk.output.kintone.util.Lazy;
+import org.embulk.output.kintone.util.LongHashSet;
 import org.embulk.spi.Exec;
 import org.embulk.spi.Page;
 import org.embulk.spi.PageReader;
 import org.embulk.spi.Schema;
 import org.embulk.spi.TransactionalPageOutput;
-import org.embulk.util.retryhelper.RetryGiveupException;
-import org.embulk.util.retryhelper.Retryable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class KintonePageOutput implements TransactionalPageOutput {
   private static final Logger LOGGER =
       LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
-  private static final List<String> RETRYABLE_ERROR_CODES =
-      Arrays.asList(
-          "GAIA_TM12", // 作成できるカーソルの上限に達しているため、カーソルを作成できません。不要なカーソルを削除するか、しばらく経ってから再実行してください。
-          "GAIA_RE18", // データベースのロックに失敗したため、変更を保存できませんでした。時間をおいて再度お試しください。
-          "GAIA_DA02" // データベースのロックに失敗したため、変更を保存できませんでした。時間をおいて再度お試しください。
-          );
   private static final int UPSERT_BATCH_SIZE = 10000;
+  private static final int BULK_REQUEST_SIZE = 20;
+  private static final int KEYSET_SIZE = 500;
   private final Map<String, Pair<FieldType, FieldType>> wrongTypeFields = new TreeMap<>();
+  private final List<Record> insertRecords = new ArrayList<>();
+  private final List<RecordForUpdate> updateRecords = new ArrayList<>();
+  private final List<Record> upsertRecords = new ArrayList<>();
+  private final List<IdOrUpdateKey> upsertIdOrUpdateKeys = new ArrayList<>();
+  private final List<IdOrUpdateKey> deleteIdOrUpdateKeys = new ArrayList<>();
+  private final LongHashSet deletedIds = new LongHashSet();
+  private final Map<String, Integer> updatePositions = new HashMap<>();
+  private final Map<String, Integer> upsertPositions = new HashMap<>();
+  private final List<Chunk> bulkChunks = new ArrayList<>();
   private final PluginTask task;
   private final PageReader reader;
   private final Lazy<KintoneClient> client;
+  private final Dispatcher dispatcher;
+  private final Pipeline pipeline;
+  private final ChunkSizeController chunkSize;
+  private final DomainGovernor governor;
+  private final CircuitBreaker breaker;
+  private final RetryPolicies retryPolicies;
+  private final AsyncRetry retry;
+  private final Lookup lookup;
+  private final KeyFilter prefetchedKeys;
+  private final KeySet insertedKeys;
+  private final KeyIndexBuilder addedKeys;
+  private final KeyCache keyCache;
+  private final Map<String, Record> existingRecords;
+  private final boolean nativeUpsert;
+  private final DeadLetter deadLetter;
+  private final Ledger ledger;
+  private final Map<String, Long> writtenHashes;
+  // Hashes of the records queued by this task, read and written on the pipeline thread only
+  private final Map<String, Long> queuedHashes;
+  private final KintoneCheckpoint checkpoint;
+  // Input positions of the records being inserted, recorded once kintone added them
+  private final Map<Record, Long> insertPositions;
+  private Function<Record, Object> toKeyValue;
+  private String ledgerFieldCode;
+  private long coalescedRecords;
+  private long unchangedRecords;
+  private long ledgerSkippedRecords;
+  private long inputPosition;
+  private long resumedRecords;
+  private long checkpointPosition;
+  private AsyncRecordClient async;
 
   public KintonePageOutput(PluginTask task, Schema schema) {
+    this(task, schema, -1);
+  }
+
+  public KintonePageOutput(PluginTask task, Schema schema, int taskIndex) {
     this.task = task;
     reader = new PageReader(schema);
     client = KintoneClient.lazy(() -> task, schema);
+    dispatcher = new Dispatcher(task.getMaxConcurrentRequests());
+    pipeline = new Pipeline(task.getPipelineQueueSize());
+    chunkSize =
+        task.getAdaptiveChunkSize().isPresent()
+            ? ChunkSizeController.adaptive(task.getChunkSize(), task.getAdaptiveChunkSize().get())
+            : ChunkSizeController.fixed(task.getChunkSize());
+    governor =
+        DomainGovernor.of(
+            task.getDomain(),
+            task.getMaxDomainConcurrency().orElse(null),
+            task.getMaxRequestsPerSecond().orElse(null));
+    breaker =
+        task.getCircuitBreaker()
+            .map(option -> CircuitBreaker.of(task.getDomain(), task.getAppId(), option))
+            .orElse(null);
+    retryPolicies = new RetryPolicies(task.getRetryOptions());
+    retry = new AsyncRetry(task.getRetryOptions(), retryPolicies);
+    lookup = new Lookup(task.getLookupQueryMaxBytes(), task.getMaxConcurrentLookups());
+    prefetchedKeys = task.getUpsertKeyIndexFile().map(KeyIndexFile::load).orElse(null);
+    insertedKeys = KeySet.of(task.getUpdateKeyName().orElse(Id.FIELD));
+    addedKeys =
+        task.getUpsertKeyIndex() == KintoneUpsertKeyIndex.PERSISTENT && prefetchedKeys != null
+            ? KeyIndexBuilder.of(task.getUpdateKeyName().orElse(Id.FIELD))
+            : null;
+    nativeUpsert =
+        KintoneMode.of(task) == KintoneMode.UPSERT
+            && task.getUpsertStrategy() == KintoneUpsertStrategy.NATIVE;
+    keyCache =
+        KintoneMode.of(task) != KintoneMode.UPSERT
+                || nativeUpsert
+                || task.getUpsertKeyCacheSize() == 0
+            ? null
+            : new KeyCache(task.getUpsertKeyCacheSize());
+    existingRecords = task.getSkipUnchanged() ? new HashMap<>() : null;
+    deadLetter =
+        task.getOnRecordError() == KintoneOnRecordError.DEAD_LETTER ? newDeadLetter(task) : null;
+    ledger = task.getLedgerFile().map(Ledger::load).orElse(null);
+    writtenHashes = ledger != null ? new HashMap<>() : null;
+    queuedHashes = ledger != null ? new HashMap<>() : null;
+    checkpoint =
+        task.getCheckpointId().isPresent() && taskIndex >= 0
+            ? KintoneCheckpoint.open(task, taskIndex)
+            : null;
+    insertPositions =
+        checkpoint != null ? Collections.synchronizedMap(new IdentityHashMap<>()) : null;
+    checkpointPosition = checkpoint != null ? checkpoint.getCommitted() : 0;
+    if (checkpointPosition > 0) {
+      LOGGER.info(
+          String.format(
+              "Resuming task %d after %d committed records", taskIndex, checkpointPosition));
+    }
   }
 
   @Override
   public void add(Page page) {
     KintoneMode.of(task).add(page, task.getSkipIfNonExistingIdOrUpdateKey(), this);
+    if (checkpoint != null && inputPosition - checkpointPosition >= task.getCheckpointInterval()) {
+      finish();
+      insertPositions.clear();
+      checkpoint.save(inputPosition);
+      checkpointPosition = inputPosition;
+    }
   }
 
   @Override
   public void finish() {
-    // noop
+    pipeline.put(
+        () -> {
+          flushUpsertRecords();
+          flushDeleteRecords();
+          flushInsertRecords();
+          flushUpdateRecords();
+          flushBulkChunks();
+        });
+    pipeline.await();
+    dispatcher.await();
   }
 
   @Override
   public void close() {
+    pipeline.close();
+    if (deadLetter != null) {
+      deadLetter.close();
+    }
+    if (async != null) {
+      async.close();
+    }
     client.get().close();
   }
 
@@ -82,77 +226,289 @@ public class KintonePageOutput implements TransactionalPageOutput {
 
   @Override
   public TaskReport commit() {
+    pipeline.await();
+    dispatcher.await();
     wrongTypeFields.forEach(
         (key, value) ->
             LOGGER.warn(
                 String.format(
                     "Field type of %s is expected %s but actual %s",
                     key, value.getLeft(), value.getRight())));
-    return Exec.newTaskReport();
+    long governorWaitMillis =
+        async == null ? 0 : TimeUnit.NANOSECONDS.toMillis(async.getGovernorWaitNanos());
+    if (governorWaitMillis > 0) {
+      LOGGER.info(
+          String.format("Waited %d ms for the limits of %s", governorWaitMillis, task.getDomain()));
+    }
+    long breakerWaitMillis =
+        async == null ? 0 : TimeUnit.NANOSECONDS.toMillis(async.getBreakerWaitNanos());
+    if (breakerWaitMillis > 0) {
+      LOGGER.info(
+          String.format(
+              "Waited %d ms for the circuit breaker of app %d",
+              breakerWaitMillis, task.getAppId()));
+    }
+    if (addedKeys != null) {
+      KeyIndex keys = addedKeys.build();
+      if (keys.size() > 0) {
+        PersistentKeyIndex.writeDelta(task.getUpsertKeyIndexFile().get(), keys);
+      }
+    }
+    if (writtenHashes != null) {
+      PersistentLedger.writeDelta(task.getLedgerFile().get(), writtenHashes);
+    }
+    if (coalescedRecords > 0) {
+      LOGGER.info(String.format("Coalesced %d duplicate records", coalescedRecords));
+    }
+    if (unchangedRecords > 0) {
+      LOGGER.info(String.format("Skipped %d unchanged records", unchangedRecords));
+    }
+    long deadLetterRecords = deadLetter == null ? 0 : deadLetter.getCount();
+    if (deadLetterRecords > 0) {
+      LOGGER.warn(
+          String.format(
+              "Wrote %d records kintone rejected to %s",
+              deadLetterRecords, deadLetter.getFile()));
+    }
+    if (ledgerSkippedRecords > 0) {
+      LOGGER.info(String.format("Skipped %d records found in the ledger", ledgerSkippedRecords));
+    }
+    TaskReport report = Exec.newTaskReport();
+    report.set("governor_wait_millis", governorWaitMillis);
+    report.set("circuit_breaker_wait_millis", breakerWaitMillis);
+    report.set("coalesced_records", coalescedRecords);
+    report.set("unchanged_records", unchangedRecords);
+    report.set("ledger_skipped_records", ledgerSkippedRecords);
+    report.set("deleted_records", deletedIds.size());
+    report.set("dead_letter_records", deadLetterRecords);
+    report.set("resumed_records", resumedRecords);
+    return report;
   }
 
   private void insert(List<Record> records) {
-    executeWithRetry(() -> client.get().record().addRecords(task.getAppId(), records));
+    if (addedKeys == null && keyCache == null && writtenHashes == null && insertPositions == null) {
+      dispatch(Chunk.add(records));
+      return;
+    }
+    if (toKeyValue == null) {
+      toKeyValue = KeyIndexPrefetcher.valueOf(task, client.get());
+    }
+    dispatch(Chunk.add(records, this::onAdded));
+  }
+
+  private void onAdded(List<Record> records, List<Long> ids) {
+    if (insertPositions != null && ids.size() == records.size()) {
+      List<Long> positions = new ArrayList<>();
+      for (Record record : records) {
+        Long position = insertPositions.remove(record);
+        if (position != null) {
+          positions.add(position);
+        }
+      }
+      checkpoint.add(positions);
+    }
+    boolean isId = task.getUpdateKeyName().orElse(Id.FIELD).equals(Id.FIELD);
+    if (keyCache != null && ids.size() == records.size()) {
+      for (int i = 0; i < records.size(); i++) {
+        keyCache.put(isId ? ids.get(i) : toKeyValue.apply(records.get(i)), ids.get(i));
+      }
+    }
+    if (writtenHashes != null && ids.size() == records.size()) {
+      for (int i = 0; i < records.size(); i++) {
+        onWritten(isId ? ids.get(i) : toKeyValue.apply(records.get(i)), records.get(i));
+      }
+    }
+    if (addedKeys == null) {
+      return;
+    }
+    synchronized (addedKeys) {
+      if (isId) {
+        ids.forEach(addedKeys::add);
+      } else {
+        records.forEach(record -> addedKeys.add(toKeyValue.apply(record)));
+      }
+    }
   }
 
   private void update(List<RecordForUpdate> records) {
-    executeWithRetry(() -> client.get().record().updateRecords(task.getAppId(), records));
-  }
-
-  private <T> T executeWithRetry(Supplier<T> operation) {
-    KintoneRetryOption retryOption = task.getRetryOptions();
-    try {
-      return retryExecutor()
-          .withRetryLimit(retryOption.getLimit())
-          .withInitialRetryWait(retryOption.getInitialWaitMillis())
-          .withMaxRetryWait(retryOption.getMaxWaitMillis())
-          .runInterruptible(
-              new Retryable<T>() {
-                @Override
-                public T call() {
-                  return operation.get();
-                }
-
-                @Override
-                public boolean isRetryableException(Exception exception) {
-                  if (!(exception instanceof KintoneApiRuntimeException)) {
-                    return false;
-                  }
-                  try {
-                    ObjectMapper mapper = new ObjectMapper();
-                    JsonNode content =
-                        mapper.readTree(((KintoneApiRuntimeException) exception).getContent());
-                    String code = content.get("code").textValue();
-                    return RETRYABLE_ERROR_CODES.contains(code);
-                  } catch (IOException e) {
-                    throw new RuntimeException(e);
-                  }
-                }
-
-                @Override
-                public void onRetry(
-                    Exception exception, int retryCount, int retryLimit, int retryWait) {
-                  String message =
-                      String.format(
-                          "Retrying %d/%d after %d seconds. Message: %s",
-                          retryCount, retryLimit, retryWait / 1000, exception.getMessage());
-                  if (retryCount % 3 == 0) {
-                    LOGGER.warn(message, exception);
-                  } else {
-                    LOGGER.warn(message);
-                  }
-                }
+    List<String> keys =
+        records.stream().map(KintonePageOutput::toKey).distinct().collect(Collectors.toList());
+    if (nativeUpsert) {
+      dispatch(
+          Chunk.upsert(records, keys, writtenHashes == null ? upserted -> {} : this::onUpdated));
+      return;
+    }
+    dispatch(
+        writtenHashes == null
+            ? Chunk.update(records, keys)
+            : Chunk.update(records, keys, this::onUpdated));
+  }
+
+  private void onUpdated(List<RecordForUpdate> records) {
+    records.forEach(record -> onWritten(toKeyValue(record), record.getRecord()));
+  }
+
+  /**
+   * Returns whether the record has the same values as the last one queued for the key by this task,
+   * or as the ledger when none has been queued. Otherwise the record is taken as queued.
+   */
+  private boolean isLedgered(Record record, Object keyValue) {
+    String key = ledger == null ? null : KeyIndex.normalize(keyValue);
+    if (key == null) {
+      return false;
+    }
+    long hash = Ledger.hash(record, getLedgerFieldCode());
+    Long last = queuedHashes.get(key);
+    if (last == null) {
+      last = ledger.get(key);
+    }
+    if (last != null && last == hash) {
+      return true;
+    }
+    queuedHashes.put(key, hash);
+    return false;
+  }
 
-                @Override
-                public void onGiveup(Exception firstException, Exception lastException) {}
-              });
-    } catch (RetryGiveupException | InterruptedException e) {
-      throw new RuntimeException("kintone throw exception", e);
+  private void onWritten(Object keyValue, Record record) {
+    String key = KeyIndex.normalize(keyValue);
+    if (key == null) {
+      return;
+    }
+    long hash = Ledger.hash(record, getLedgerFieldCode());
+    synchronized (writtenHashes) {
+      writtenHashes.put(key, hash);
     }
   }
 
+  private synchronized String getLedgerFieldCode() {
+    if (ledgerFieldCode == null) {
+      ledgerFieldCode = KeyIndexPrefetcher.getFieldCode(task, client.get());
+    }
+    return ledgerFieldCode;
+  }
+
+  private void dispatch(Chunk chunk) {
+    if (task.getRequestMode() == KintoneRequestMode.BULK) {
+      bulkChunks.add(chunk);
+      if (bulkChunks.size() == BULK_REQUEST_SIZE) {
+        flushBulkChunks();
+      }
+      return;
+    }
+    AsyncRecordClient async = async();
+    dispatcher.dispatch(chunk.getKeys(), () -> send(async, chunk));
+  }
+
+  private CompletableFuture<Void> send(AsyncRecordClient async, Chunk chunk) {
+    Function<Chunk, CompletableFuture<Void>> send =
+        c -> retry.execute(() -> measure(() -> c.send(async, task.getAppId())));
+    return deadLetter == null ? send.apply(chunk) : deadLetter.send(chunk, send);
+  }
+
+  /** Sends the chunks of a bulk request one by one, after the bulk request failed as a whole. */
+  private CompletableFuture<Void> sendEach(AsyncRecordClient async, List<Chunk> chunks) {
+    CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+    for (Chunk chunk : chunks) {
+      future = future.thenCompose(ignored -> send(async, chunk));
+    }
+    return future;
+  }
+
+  private static DeadLetter newDeadLetter(PluginTask task) {
+    if (!task.getDeadLetterDirectory().isPresent()) {
+      throw new ConfigException(
+          "dead_letter_directory must be configured when on_record_error is dead_letter.");
+    }
+    File directory = new File(task.getDeadLetterDirectory().get());
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new ConfigException(String.format("Failed to create %s", directory));
+    }
+    return new DeadLetter(
+        new File(
+            directory,
+            String.format("%s-%d-%s.jsonl", task.getDomain(), task.getAppId(), UUID.randomUUID())));
+  }
+
+  private void flushBulkChunks() {
+    if (bulkChunks.isEmpty()) {
+      return;
+    }
+    List<Chunk> chunks = new ArrayList<>(bulkChunks);
+    bulkChunks.clear();
+    AsyncRecordClient async = async();
+    List<String> keys =
+        chunks.stream()
+            .map(Chunk::getKeys)
+            .flatMap(Collection::stream)
+            .distinct()
+            .collect(Collectors.toList());
+    dispatcher.dispatch(
+        keys,
+        () ->
+            retry
+                .execute(() -> measure(() -> async.bulkRequests(toBulkRequest(chunks))))
+                .handle(
+                    (response, throwable) -> {
+                      if (throwable != null) {
+                        Throwable cause = AsyncRetry.unwrap(throwable);
+                        if (deadLetter != null && DeadLetter.getRecordError(cause) != null) {
+                          // Nothing of a failed bulk request is applied
+                          return sendEach(async, chunks);
+                        }
+                        throw new RuntimeException(getBulkErrorMessage(chunks, cause), cause);
+                      }
+                      if (response != null && response.getResults() != null) {
+                        for (int i = 0; i < response.getResults().size(); i++) {
+                          chunks.get(i).complete(response.getResults().get(i));
+                        }
+                      }
+                      return CompletableFuture.<Void>completedFuture(null);
+                    })
+                .thenCompose(Function.identity()));
+  }
+
+  private BulkRequestsRequest toBulkRequest(List<Chunk> chunks) {
+    BulkRequestsRequest request = new BulkRequestsRequest();
+    chunks.forEach(chunk -> request.registerRequest(chunk.toRequest(task.getAppId())));
+    return request;
+  }
+
+  private <T> CompletableFuture<T> measure(Supplier<CompletableFuture<T>> request) {
+    long started = System.currentTimeMillis();
+    return request
+        .get()
+        .whenComplete(
+            (result, throwable) -> {
+              if (throwable == null) {
+                chunkSize.onSuccess(System.currentTimeMillis() - started);
+                return;
+              }
+              Throwable cause = AsyncRetry.unwrap(throwable);
+              if (retryPolicies.isRetryable(cause) || isTimeout(cause)) {
+                chunkSize.onThrottled();
+              }
+            });
+  }
+
+  private AsyncRecordClient async() {
+    if (async == null) {
+      async =
+          new AsyncRecordClient(
+              client.get().record(),
+              client.get().bulkRequests(),
+              governor,
+              breaker,
+              Math.max(task.getMaxConcurrentRequests(), task.getMaxConcurrentLookups()));
+    }
+    return async;
+  }
+
+  private void await() {
+    flushBulkChunks();
+    dispatcher.await();
+  }
+
   public void insertPage(Page page) {
-    List<Record> records = new ArrayList<>();
     reader.setPage(page);
     KintoneColumnVisitor visitor =
         new KintoneColumnVisitor(
@@ -162,25 +518,25 @@ public class KintonePageOutput implements TransactionalPageOutput {
             task.getPreferNulls(),
             task.getIgnoreNulls(),
             task.getReduceKeyName().orElse(null));
+    List<Record> records = new ArrayList<>();
     while (reader.nextRecord()) {
+      if (isCommitted()) {
+        continue;
+      }
       Record record = new Record();
       visitor.setRecord(record);
       reader.getSchema().visitColumns(visitor);
       putWrongTypeFields(record);
       records.add(record);
-      if (records.size() == task.getChunkSize()) {
-        insert(records);
-        records.clear();
+      if (insertPositions != null) {
+        insertPositions.put(record, inputPosition - 1);
       }
     }
-    if (!records.isEmpty()) {
-      insert(records);
-    }
+    pipeline.put(() -> records.forEach(this::addInsertRecord));
   }
 
   public void updatePage(Page page) {
     Skip skip = task.getSkipIfNonExistingIdOrUpdateKey();
-    List<RecordForUpdate> records = new ArrayList<>();
     reader.setPage(page);
     KintoneColumnVisitor visitor =
         new KintoneColumnVisitor(
@@ -191,7 +547,11 @@ public class KintonePageOutput implements TransactionalPageOutput {
             task.getIgnoreNulls(),
             task.getReduceKeyName().orElse(null),
             task.getUpdateKeyName().orElse(Id.FIELD));
+    List<RecordForUpdate> records = new ArrayList<>();
     while (reader.nextRecord()) {
+      if (isCommitted()) {
+        continue;
+      }
       Record record = new Record();
       IdOrUpdateKey idOrUpdateKey = new IdOrUpdateKey();
       visitor.setRecord(record);
@@ -205,19 +565,20 @@ public class KintonePageOutput implements TransactionalPageOutput {
         continue;
       }
       records.add(idOrUpdateKey.forUpdate(record));
-      if (records.size() == task.getChunkSize()) {
-        update(records);
-        records.clear();
-      }
-    }
-    if (!records.isEmpty()) {
-      update(records);
     }
+    pipeline.put(
+        () ->
+            records.forEach(
+                record -> {
+                  if (isLedgered(record.getRecord(), toKeyValue(record))) {
+                    ledgerSkippedRecords++;
+                  } else {
+                    addUpdateRecord(record);
+                  }
+                }));
   }
 
   public void upsertPage(Page page) {
-    List<Record> records = new ArrayList<>();
-    List<IdOrUpdateKey> idOrUpdateKeys = new ArrayList<>();
     reader.setPage(page);
     KintoneColumnVisitor visitor =
         new KintoneColumnVisitor(
@@ -228,7 +589,12 @@ public class KintonePageOutput implements TransactionalPageOutput {
             task.getIgnoreNulls(),
             task.getReduceKeyName().orElse(null),
             task.getUpdateKeyName().orElse(Id.FIELD));
+    List<Record> records = new ArrayList<>();
+    List<IdOrUpdateKey> idOrUpdateKeys = new ArrayList<>();
     while (reader.nextRecord()) {
+      if (isCommitted()) {
+        continue;
+      }
       Record record = new Record();
       IdOrUpdateKey idOrUpdateKey = new IdOrUpdateKey();
       visitor.setRecord(record);
@@ -237,14 +603,199 @@ public class KintonePageOutput implements TransactionalPageOutput {
       putWrongTypeFields(record);
       records.add(record);
       idOrUpdateKeys.add(idOrUpdateKey);
-      if (records.size() == UPSERT_BATCH_SIZE) {
-        upsert(records, idOrUpdateKeys);
-        records.clear();
-        idOrUpdateKeys.clear();
+    }
+    pipeline.put(
+        () -> {
+          for (int i = 0; i < records.size(); i++) {
+            if (isLedgered(records.get(i), idOrUpdateKeys.get(i).getValue())) {
+              ledgerSkippedRecords++;
+              continue;
+            }
+            if (nativeUpsert) {
+              addNativeUpsertRecord(records.get(i), idOrUpdateKeys.get(i));
+            } else {
+              addUpsertRecord(records.get(i), idOrUpdateKeys.get(i));
+            }
+          }
+        });
+  }
+
+  public void deletePage(Page page) {
+    Skip skip = task.getSkipIfNonExistingIdOrUpdateKey();
+    reader.setPage(page);
+    KintoneColumnVisitor visitor =
+        new KintoneColumnVisitor(
+            reader,
+            task.getDerivedColumns(),
+            task.getColumnOptions(),
+            task.getPreferNulls(),
+            task.getIgnoreNulls(),
+            task.getReduceKeyName().orElse(null),
+            task.getUpdateKeyName().orElse(Id.FIELD));
+    List<IdOrUpdateKey> idOrUpdateKeys = new ArrayList<>();
+    while (reader.nextRecord()) {
+      if (isCommitted()) {
+        continue;
+      }
+      IdOrUpdateKey idOrUpdateKey = new IdOrUpdateKey();
+      visitor.setRecord(new Record());
+      visitor.setIdOrUpdateKey(idOrUpdateKey);
+      reader.getSchema().visitColumns(visitor);
+      if (skip == Skip.NEVER && !idOrUpdateKey.isPresent()) {
+        throw new RuntimeException("No id or update key value was specified");
+      } else if (!idOrUpdateKey.isPresent()) {
+        LOGGER.warn("Record skipped because no id or update key value was specified");
+        continue;
+      }
+      idOrUpdateKeys.add(idOrUpdateKey);
+    }
+    pipeline.put(() -> idOrUpdateKeys.forEach(this::addDeleteRecord));
+  }
+
+  /** Counts the input record and returns whether a previous attempt of the task has written it. */
+  private boolean isCommitted() {
+    if (checkpoint == null || !checkpoint.isCommitted(inputPosition++)) {
+      return false;
+    }
+    resumedRecords++;
+    return true;
+  }
+
+  private void addUpsertRecord(Record record, IdOrUpdateKey idOrUpdateKey) {
+    KintoneCoalesce coalesce = task.getCoalesceDuplicates();
+    if (coalesce != KintoneCoalesce.NONE && idOrUpdateKey.isPresent()) {
+      String key = toKey(idOrUpdateKey);
+      Integer position = upsertPositions.get(key);
+      if (position != null) {
+        upsertRecords.set(position, coalesce.merge(upsertRecords.get(position), record));
+        upsertIdOrUpdateKeys.set(position, idOrUpdateKey);
+        coalescedRecords++;
+        return;
+      }
+      upsertPositions.put(key, upsertRecords.size());
+    }
+    upsertRecords.add(record);
+    upsertIdOrUpdateKeys.add(idOrUpdateKey);
+    if (upsertRecords.size() == UPSERT_BATCH_SIZE) {
+      flushUpsertRecords();
+    }
+  }
+
+  /** Sends the record to kintone to be updated or inserted by the update key without a lookup. */
+  private void addNativeUpsertRecord(Record record, IdOrUpdateKey idOrUpdateKey) {
+    UpdateKey updateKey = idOrUpdateKey.getUpdateKey();
+    if (idOrUpdateKey.isUpdateKeyPresent()) {
+      addUpdateRecord(new RecordForUpdate(updateKey, record.removeField(updateKey.getField())));
+    } else if (task.getSkipIfNonExistingIdOrUpdateKey() == Skip.AUTO) {
+      LOGGER.warn("Record skipped because no update key value was specified");
+    } else {
+      LOGGER.warn("Record inserted though no update key value was specified");
+      addInsertRecord(record);
+    }
+  }
+
+  private void addInsertRecord(Record record) {
+    insertRecords.add(record);
+    if (insertRecords.size() >= chunkSize.get()) {
+      flushInsertRecords();
+    }
+  }
+
+  private void addUpdateRecord(RecordForUpdate record) {
+    KintoneCoalesce coalesce = task.getCoalesceDuplicates();
+    if (coalesce != KintoneCoalesce.NONE) {
+      String key = toKey(record);
+      Integer position = updatePositions.get(key);
+      if (position != null) {
+        RecordForUpdate older = updateRecords.get(position);
+        Record merged = coalesce.merge(older.getRecord(), record.getRecord());
+        updateRecords.set(
+            position,
+            record.getId() != null
+                ? new RecordForUpdate(record.getId(), merged)
+                : new RecordForUpdate(record.getUpdateKey(), merged));
+        coalescedRecords++;
+        return;
+      }
+      updatePositions.put(key, updateRecords.size());
+    }
+    updateRecords.add(record);
+    if (updateRecords.size() >= chunkSize.get()) {
+      flushUpdateRecords();
+    }
+  }
+
+  private void addDeleteRecord(IdOrUpdateKey idOrUpdateKey) {
+    deleteIdOrUpdateKeys.add(idOrUpdateKey);
+    if (deleteIdOrUpdateKeys.size() == UPSERT_BATCH_SIZE) {
+      flushDeleteRecords();
+    }
+  }
+
+  private void flushInsertRecords() {
+    if (insertRecords.isEmpty()) {
+      return;
+    }
+    insert(new ArrayList<>(insertRecords));
+    insertRecords.clear();
+  }
+
+  private void flushUpdateRecords() {
+    if (updateRecords.isEmpty()) {
+      return;
+    }
+    update(new ArrayList<>(updateRecords));
+    updateRecords.clear();
+    updatePositions.clear();
+  }
+
+  private void flushUpsertRecords() {
+    if (upsertRecords.isEmpty()) {
+      return;
+    }
+    upsert(upsertRecords, upsertIdOrUpdateKeys);
+    upsertRecords.clear();
+    upsertIdOrUpdateKeys.clear();
+    upsertPositions.clear();
+  }
+
+  private void flushDeleteRecords() {
+    if (deleteIdOrUpdateKeys.isEmpty()) {
+      return;
+    }
+    delete(deleteIdOrUpdateKeys);
+    deleteIdOrUpdateKeys.clear();
+  }
+
+  private void delete(List<IdOrUpdateKey> idOrUpdateKeys) {
+    Skip skip = task.getSkipIfNonExistingIdOrUpdateKey();
+    Map<String, Long> ids =
+        AsyncRetry.join(getExistingIds(idOrUpdateKeys, task.getUpdateKeyName().orElse(Id.FIELD)));
+    List<Long> chunk = new ArrayList<>();
+    for (IdOrUpdateKey idOrUpdateKey : idOrUpdateKeys) {
+      Long id = ids.get(KeyIndex.normalize(idOrUpdateKey.getValue()));
+      if (id == null && skip == Skip.NEVER) {
+        throw new RuntimeException(
+            "Non existing id or update key '" + idOrUpdateKey.getValue() + "' was specified");
+      } else if (id == null) {
+        LOGGER.warn(
+            "Record skipped because non existing id or update key '"
+                + idOrUpdateKey.getValue()
+                + "' was specified");
+        continue;
+      }
+      // kintone fails to delete a record twice
+      if (!deletedIds.add(id)) {
+        continue;
+      }
+      chunk.add(id);
+      if (chunk.size() == KintoneRecordDeleter.DELETE_SIZE) {
+        dispatch(Chunk.delete(chunk));
+        chunk = new ArrayList<>();
       }
     }
-    if (!records.isEmpty()) {
-      upsert(records, idOrUpdateKeys);
+    if (!chunk.isEmpty()) {
+      dispatch(Chunk.delete(chunk));
     }
   }
 
@@ -255,15 +806,51 @@ public class KintonePageOutput implements TransactionalPageOutput {
     Skip skip = task.getSkipIfNonExistingIdOrUpdateKey();
     String columnName = task.getUpdateKeyName().orElse(Id.FIELD);
     boolean isId = columnName.equals(Id.FIELD);
-    List<String> existingValues =
-        executeWithRetry(() -> getExistingValuesByIdOrUpdateKey(idOrUpdateKeys, columnName));
-    List<Record> insertRecords = new ArrayList<>();
-    List<RecordForUpdate> updateRecords = new ArrayList<>();
+    // Records buffered by the previous batch must exist before looking up this batch
+    flushInsertRecords();
+    await();
+    // Keys found by the previous lookups or inserted by this task need no lookup, unless the
+    // existing records are compared. They are copied, as the lookup may evict them from the cache
+    Map<String, Long> cachedKeys =
+        keyCache == null || existingRecords != null
+            ? Collections.emptyMap()
+            : keyCache.getAll(
+                idOrUpdateKeys.stream().map(IdOrUpdateKey::getValue).collect(Collectors.toList()));
+    List<IdOrUpdateKey> lookupKeys =
+        idOrUpdateKeys.stream()
+            .filter(
+                idOrUpdateKey ->
+                    !cachedKeys.containsKey(KeyIndex.normalize(idOrUpdateKey.getValue())))
+            .collect(Collectors.toList());
+    KeyFilter existingKeys;
+    if (prefetchedKeys != null && prefetchedKeys.isExact() && existingRecords == null) {
+      existingKeys = prefetchedKeys;
+    } else {
+      if (prefetchedKeys != null) {
+        // Keys absent from the prefetched index or filter certainly do not exist
+        lookupKeys =
+            lookupKeys.stream()
+                .filter(idOrUpdateKey -> prefetchedKeys.contains(idOrUpdateKey.getValue()))
+                .collect(Collectors.toList());
+      }
+      if (existingRecords != null) {
+        existingRecords.clear();
+      }
+      existingKeys = AsyncRetry.join(getExistingValuesByIdOrUpdateKey(lookupKeys, columnName));
+    }
+    List<Object> insertedValues = new ArrayList<>();
     for (int i = 0; i < records.size(); i++) {
       RecordForUpdate recordForUpdate = null;
       Record record = records.get(i);
       IdOrUpdateKey idOrUpdateKey = idOrUpdateKeys.get(i);
-      if (existsRecord(existingValues, idOrUpdateKey)) {
+      if (existingKeys.contains(idOrUpdateKey.getValue())
+          || insertedKeys.contains(idOrUpdateKey.getValue())
+          || cachedKeys.containsKey(KeyIndex.normalize(idOrUpdateKey.getValue()))) {
+        if (isUnchanged(record, idOrUpdateKey)) {
+          unchangedRecords++;
+          continue;
+        }
+        putExistingRecord(record, idOrUpdateKey);
         recordForUpdate = idOrUpdateKey.forUpdate(record);
       } else if (skip == Skip.ALWAYS && idOrUpdateKey.isPresent()) {
         LOGGER.warn(
@@ -292,75 +879,204 @@ public class KintonePageOutput implements TransactionalPageOutput {
         LOGGER.warn("Record inserted though no update key value was specified");
       }
       if (recordForUpdate != null) {
-        updateRecords.add(recordForUpdate);
+        addUpdateRecord(recordForUpdate);
       } else {
-        insertRecords.add(record);
+        addInsertRecord(record);
+        if (!isId && idOrUpdateKey.isUpdateKeyPresent()) {
+          insertedValues.add(idOrUpdateKey.getValue());
+        }
       }
-      if (insertRecords.size() == task.getChunkSize()) {
-        insert(insertRecords);
-        insertRecords.clear();
-      } else if (updateRecords.size() == task.getChunkSize()) {
-        update(updateRecords);
-        updateRecords.clear();
-      }
-    }
-    if (!insertRecords.isEmpty()) {
-      insert(insertRecords);
     }
-    if (!updateRecords.isEmpty()) {
-      update(updateRecords);
+    if (prefetchedKeys != null) {
+      // The prefetched index does not know the records inserted by this task
+      insertedValues.forEach(insertedKeys::add);
     }
   }
 
-  private List<String> getExistingValuesByIdOrUpdateKey(
+  private CompletableFuture<KeyIndex> getExistingValuesByIdOrUpdateKey(
+      List<IdOrUpdateKey> idOrUpdateKeys, String columnName) {
+    KeySet index = KeySet.of(columnName);
+    return getExistingRecords(
+            idOrUpdateKeys,
+            columnName,
+            (value, record) -> {
+              index.add(value);
+              if (keyCache != null) {
+                keyCache.put(value, record.getId());
+              }
+              if (existingRecords != null) {
+                existingRecords.put(KeyIndex.normalize(value), record);
+              }
+            })
+        .thenApply(ignored -> index);
+  }
+
+  private CompletableFuture<Map<String, Long>> getExistingIds(
       List<IdOrUpdateKey> idOrUpdateKeys, String columnName) {
+    Map<String, Long> ids = new HashMap<>();
+    return getExistingRecords(
+            idOrUpdateKeys,
+            columnName,
+            (value, record) -> ids.put(KeyIndex.normalize(value), record.getId()))
+        .thenApply(ignored -> ids);
+  }
+
+  /** Passes the existing records of the ids or update keys and their values to the action. */
+  private CompletableFuture<Void> getExistingRecords(
+      List<IdOrUpdateKey> idOrUpdateKeys, String columnName, BiConsumer<Object, Record> action) {
     List<String> queryValues =
         idOrUpdateKeys.stream()
             .filter(IdOrUpdateKey::isPresent)
             .map(k -> "\"" + k.getValue() + "\"")
             .collect(Collectors.toList());
     if (queryValues.isEmpty()) {
-      return Collections.emptyList();
+      return CompletableFuture.completedFuture(null);
+    }
+    String fieldCode;
+    Function<Record, Object> toValue;
+    if (columnName.equals(Id.FIELD)) {
+      fieldCode = Id.FIELD;
+      toValue = Record::getId;
+    } else {
+      KintoneColumnOption option = task.getColumnOptions().get(columnName);
+      fieldCode = option != null ? option.getFieldCode() : columnName;
+      KintoneColumnType type = KintoneColumnType.valueOf(getFieldType(fieldCode).name());
+      toValue = record -> type.getValue(record, fieldCode);
     }
-    return columnName.equals(Id.FIELD)
-        ? getExistingValuesById(queryValues)
-        : getExistingValuesByUpdateKey(columnName, queryValues);
+    AsyncRecordClient async = async();
+    List<String> fields = getLookupFields(fieldCode);
+    return lookup.execute(
+        lookup.split(fieldCode, queryValues),
+        query ->
+            retry.execute(
+                () ->
+                    task.getLookupStrategy() == KintoneLookupStrategy.KEYSET
+                        ? getRecordsByKeyset(async, fields, query, 0, new ArrayList<>())
+                        : getRecordsByCursor(async, fields, query)),
+        records -> records.forEach(record -> action.accept(toValue.apply(record), record)));
   }
 
-  private List<String> getExistingValuesById(List<String> queryValues) {
-    return getExistingValues(Id.FIELD, Record::getId, queryValues);
+  private CompletableFuture<List<Record>> getRecordsByCursor(
+      AsyncRecordClient async, List<String> fields, String query) {
+    return async
+        .createCursor(task.getAppId(), fields, query)
+        .thenCompose(
+            cursorId ->
+                getRecordsByCursor(async, cursorId, new ArrayList<>())
+                    .whenComplete(
+                        (records, throwable) -> {
+                          // The cursor is left open only when reading it failed midway
+                          if (throwable != null) {
+                            async
+                                .deleteCursor(cursorId)
+                                .exceptionally(
+                                    e -> {
+                                      LOGGER.warn(
+                                          String.format("Failed to delete cursor %s", cursorId),
+                                          e);
+                                      return null;
+                                    });
+                          }
+                        }));
   }
 
-  private List<String> getExistingValuesByUpdateKey(String columnName, List<String> queryValues) {
-    KintoneColumnOption option = task.getColumnOptions().get(columnName);
-    String fieldCode = option != null ? option.getFieldCode() : columnName;
-    KintoneColumnType type = KintoneColumnType.valueOf(getFieldType(fieldCode).name());
-    return getExistingValues(fieldCode, record -> type.getValue(record, fieldCode), queryValues);
+  private static CompletableFuture<List<Record>> getRecordsByCursor(
+      AsyncRecordClient async, String cursorId, List<Record> records) {
+    return async
+        .getRecordsByCursor(cursorId)
+        .thenCompose(
+            cursor -> {
+              records.addAll(cursor.getRecords());
+              return cursor.hasNext()
+                  ? getRecordsByCursor(async, cursorId, records)
+                  : CompletableFuture.completedFuture(records);
+            });
   }
 
-  private List<String> getExistingValues(
-      String fieldCode, Function<Record, Object> toValue, List<String> queryValues) {
-    String cursorId =
-        client
-            .get()
-            .record()
-            .createCursor(
-                task.getAppId(),
-                Collections.singletonList(fieldCode),
-                fieldCode + " in (" + String.join(",", queryValues) + ")");
-    List<Record> records = new ArrayList<>();
-    while (true) {
-      GetRecordsByCursorResponseBody cursor = client.get().record().getRecordsByCursor(cursorId);
-      records.addAll(cursor.getRecords());
-      if (!cursor.hasNext()) {
-        break;
+  /** Pages through the records in the order of $id, so that no cursor is needed. */
+  private CompletableFuture<List<Record>> getRecordsByKeyset(
+      AsyncRecordClient async,
+      List<String> fields,
+      String query,
+      long lastId,
+      List<Record> records) {
+    GetRecordsRequest request =
+        new GetRecordsRequest()
+            .setApp((long) task.getAppId())
+            .setFields(fields)
+            .setQuery(
+                String.format(
+                    "(%s) and %s > %d order by %s asc limit %d",
+                    query, Id.FIELD, lastId, Id.FIELD, KEYSET_SIZE));
+    return async
+        .getRecords(request)
+        .thenCompose(
+            response -> {
+              List<Record> page = response.getRecords();
+              records.addAll(page);
+              return page.size() < KEYSET_SIZE
+                  ? CompletableFuture.completedFuture(records)
+                  : getRecordsByKeyset(
+                      async, fields, query, page.get(page.size() - 1).getId(), records);
+            });
+  }
+
+  private List<String> getLookupFields(String fieldCode) {
+    if (existingRecords == null) {
+      // The ids are read only to be cached or deleted
+      return fieldCode.equals(Id.FIELD)
+              || keyCache == null && KintoneMode.of(task) != KintoneMode.DELETE
+          ? Collections.singletonList(fieldCode)
+          : Arrays.asList(fieldCode, Id.FIELD);
+    }
+    // Every field written is read to compare the records
+    Set<String> fields = new LinkedHashSet<>(Arrays.asList(fieldCode, Id.FIELD));
+    fields.addAll(client.get().getFieldTypes().keySet());
+    return new ArrayList<>(fields);
+  }
+
+  private boolean isUnchanged(Record record, IdOrUpdateKey idOrUpdateKey) {
+    if (existingRecords == null) {
+      return false;
+    }
+    Record existing = existingRecords.get(KeyIndex.normalize(idOrUpdateKey.getValue()));
+    if (existing == null) {
+      return false;
+    }
+    for (String fieldCode : record.getFieldCodes(true)) {
+      FieldType fieldType = getFieldType(fieldCode);
+      KintoneColumnType type;
+      try {
+        type = fieldType == null ? null : KintoneColumnType.valueOf(fieldType.name());
+      } catch (IllegalArgumentException e) {
+        type = null;
+      }
+      FieldValue value = record.getFieldValue(fieldCode);
+      FieldValue existingValue = existing.getFieldValue(fieldCode);
+      boolean same =
+          type == null ? Objects.equals(value, existingValue) : type.isSame(value, existingValue);
+      if (!same) {
+        return false;
       }
     }
-    return records.stream()
-        .map(toValue)
-        .map(KintonePageOutput::toString)
-        .filter(Objects::nonNull)
-        .collect(Collectors.toList());
+    return true;
+  }
+
+  /** Takes the record queued for update as the existing one, for the later records of the batch. */
+  private void putExistingRecord(Record record, IdOrUpdateKey idOrUpdateKey) {
+    if (existingRecords == null) {
+      return;
+    }
+    String key = KeyIndex.normalize(idOrUpdateKey.getValue());
+    Record existing = existingRecords.get(key);
+    Record queued = new Record();
+    if (existing != null) {
+      existing
+          .getFieldCodes(true)
+          .forEach(code -> queued.putField(code, existing.getFieldValue(code)));
+    }
+    record.getFieldCodes(true).forEach(code -> queued.putField(code, record.getFieldValue(code)));
+    existingRecords.put(key, queued);
   }
 
   private void putWrongTypeFields(Record record) {
@@ -377,14 +1093,60 @@ public class KintonePageOutput implements TransactionalPageOutput {
     return client.get().getFieldType(fieldCode);
   }
 
-  private static boolean existsRecord(List<String> existingValues, IdOrUpdateKey idOrUpdateKey) {
-    String value = toString(idOrUpdateKey.getValue());
-    return value != null && existingValues.stream().anyMatch(v -> v.equals(value));
+  private static boolean isTimeout(Throwable throwable) {
+    for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SocketTimeoutException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String getBulkErrorMessage(List<Chunk> chunks, Throwable exception) {
+    Throwable cause = exception;
+    while (cause != null && !(cause instanceof KintoneApiRuntimeException)) {
+      cause = cause.getCause();
+    }
+    if (cause == null) {
+      return String.format("kintone throw exception in bulkRequest of %s", chunks);
+    }
+    JsonNode content = ApiErrors.readContent((KintoneApiRuntimeException) cause);
+    JsonNode results = content == null ? null : content.get("results");
+    int index = getBulkErrorIndex(results);
+    return index < 0
+        ? String.format("kintone throw exception in bulkRequest of %s", chunks)
+        : String.format(
+            "kintone throw exception in bulkRequest at request %d/%d %s: %s",
+            index + 1, chunks.size(), chunks.get(index), results.get(index));
+  }
+
+  private static int getBulkErrorIndex(JsonNode results) {
+    if (results == null || !results.isArray()) {
+      return -1;
+    }
+    for (int i = 0; i < results.size(); i++) {
+      if (results.get(i).has("code")) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static String toKey(IdOrUpdateKey idOrUpdateKey) {
+    return String.format(
+        "%s=%s", idOrUpdateKey.getField(), KeyIndex.normalize(idOrUpdateKey.getValue()));
+  }
+
+  private static Object toKeyValue(RecordForUpdate record) {
+    return record.getId() != null ? record.getId() : record.getUpdateKey().getValue();
   }
 
-  private static String toString(Object value) {
-    return value == null
-        ? null
-        : value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString();
+  private static String toKey(RecordForUpdate record) {
+    return record.getId() != null
+        ? String.format("%s=%d", Id.FIELD, record.getId())
+        : String.format(
+            "%s=%s",
+            record.getUpdateKey().getField(),
+            KeyIndex.normalize(record.getUpdateKey().getValue()));
   }
 }
@@ -0,0 +1,71 @@
+package org.embulk.output.kintone;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import org.embulk.output.kintone.dispatcher.AsyncRecordClient;
+import org.embulk.output.kintone.dispatcher.AsyncRetry;
+import org.embulk.output.kintone.dispatcher.Chunk;
+import org.embulk.output.kintone.dispatcher.CircuitBreaker;
+import org.embulk.output.kintone.dispatcher.Dispatcher;
+import org.embulk.output.kintone.dispatcher.DomainGovernor;
+import org.embulk.output.kintone.dispatcher.RetryPolicies;
+import org.embulk.output.kintone.index.KeyIndex;
+import org.embulk.output.kintone.index.KeyIndexPrefetcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes every record of the app before the tasks of replace mode insert, sending the deletions
+ * concurrently under the same window, domain limits, circuit breaker and retries as the tasks.
+ */
+public class KintoneRecordDeleter {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  public static final int DELETE_SIZE = 100;
+
+  public static void deleteAll(PluginTask task, KintoneClient client) {
+    // The ids are read up front, so that no cursor is open while its records are deleted
+    KeyIndex ids = KeyIndexPrefetcher.prefetch(task, client);
+    Dispatcher dispatcher = new Dispatcher(task.getMaxConcurrentRequests());
+    AsyncRetry retry =
+        new AsyncRetry(task.getRetryOptions(), new RetryPolicies(task.getRetryOptions()));
+    DomainGovernor governor =
+        DomainGovernor.of(
+            task.getDomain(),
+            task.getMaxDomainConcurrency().orElse(null),
+            task.getMaxRequestsPerSecond().orElse(null));
+    CircuitBreaker breaker =
+        task.getCircuitBreaker()
+            .map(option -> CircuitBreaker.of(task.getDomain(), task.getAppId(), option))
+            .orElse(null);
+    try (AsyncRecordClient async =
+        new AsyncRecordClient(
+            client.record(),
+            client.bulkRequests(),
+            governor,
+            breaker,
+            task.getMaxConcurrentRequests())) {
+      List<Long> batch = new ArrayList<>();
+      ids.forEach(
+          id -> {
+            batch.add((Long) id);
+            if (batch.size() == DELETE_SIZE) {
+              delete(dispatcher, retry, async, task.getAppId(), new ArrayList<>(batch));
+              batch.clear();
+            }
+          });
+      if (!batch.isEmpty()) {
+        delete(dispatcher, retry, async, task.getAppId(), batch);
+      }
+      dispatcher.await();
+    }
+    LOGGER.info(String.format("Deleted %d records of app %d", ids.size(), task.getAppId()));
+  }
+
+  private static void delete(
+      Dispatcher dispatcher, AsyncRetry retry, AsyncRecordClient async, long app, List<Long> ids) {
+    Chunk chunk = Chunk.delete(ids);
+    dispatcher.dispatch(chunk.getKeys(), () -> retry.execute(() -> chunk.send(async, app)));
+  }
+}
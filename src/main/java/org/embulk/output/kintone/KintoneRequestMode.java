@@ -0,0 +1,13 @@
+package org.embulk.output.kintone;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+public enum KintoneRequestMode {
+  SINGLE,
+  BULK;
+
+  @JsonCreator
+  public static KintoneRequestMode of(String name) {
+    return valueOf(name.toUpperCase());
+  }
+}
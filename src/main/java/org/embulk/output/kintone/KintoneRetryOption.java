@@ -1,5 +1,7 @@
 package org.embulk.output.kintone;
 
+import java.util.Map;
+import java.util.Optional;
 import org.embulk.util.config.Config;
 import org.embulk.util.config.ConfigDefault;
 import org.embulk.util.config.Task;
@@ -16,4 +18,12 @@ public interface KintoneRetryOption extends Task {
   @Config("max_wait_millis")
   @ConfigDefault("60000")
   Integer getMaxWaitMillis();
+
+  @Config("budget_millis")
+  @ConfigDefault("null")
+  Optional<Long> getBudgetMillis();
+
+  @Config("error_codes")
+  @ConfigDefault("{}")
+  Map<String, KintoneErrorCodeRetryOption> getErrorCodes();
 }
@@ -0,0 +1,62 @@
+package org.embulk.output.kintone;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import java.util.Optional;
+import org.embulk.output.kintone.index.KeyIndexFile;
+import org.embulk.output.kintone.index.KeyIndexPrefetcher;
+import org.embulk.output.kintone.index.PersistentKeyIndex;
+
+public enum KintoneUpsertKeyIndex {
+  NONE {
+    @Override
+    public Optional<String> prepare(PluginTask task, KintoneClient client) {
+      return Optional.empty();
+    }
+
+    @Override
+    public void cleanup(String path) {}
+  },
+  PREFETCH {
+    @Override
+    public Optional<String> prepare(PluginTask task, KintoneClient client) {
+      return Optional.of(KeyIndexFile.write(KeyIndexPrefetcher.prefetch(task, client)));
+    }
+
+    @Override
+    public void cleanup(String path) {
+      KeyIndexFile.delete(path);
+    }
+  },
+  BLOOM {
+    @Override
+    public Optional<String> prepare(PluginTask task, KintoneClient client) {
+      return Optional.of(KeyIndexFile.write(KeyIndexPrefetcher.bloom(task, client)));
+    }
+
+    @Override
+    public void cleanup(String path) {
+      KeyIndexFile.delete(path);
+    }
+  },
+  PERSISTENT {
+    @Override
+    public Optional<String> prepare(PluginTask task, KintoneClient client) {
+      return Optional.of(PersistentKeyIndex.refresh(task, client));
+    }
+
+    @Override
+    public void cleanup(String path) {
+      PersistentKeyIndex.merge(path);
+    }
+  };
+
+  /** Returns the path of the key index file handed to the tasks. */
+  public abstract Optional<String> prepare(PluginTask task, KintoneClient client);
+
+  public abstract void cleanup(String path);
+
+  @JsonCreator
+  public static KintoneUpsertKeyIndex of(String name) {
+    return valueOf(name.toUpperCase());
+  }
+}
@@ -0,0 +1,13 @@
+package org.embulk.output.kintone;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+public enum KintoneUpsertStrategy {
+  LOOKUP,
+  NATIVE;
+
+  @JsonCreator
+  public static KintoneUpsertStrategy of(String name) {
+    return valueOf(name.toUpperCase());
+  }
+}
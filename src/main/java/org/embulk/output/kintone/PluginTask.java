@@ -1,5 +1,6 @@
 package org.embulk.output.kintone;
 
+import com.kintone.client.model.record.FieldType;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -85,6 +86,94 @@ public interface PluginTask extends Task {
   @ConfigDefault("100")
   Integer getChunkSize();
 
+  @Config("adaptive_chunk_size")
+  @ConfigDefault("null")
+  Optional<KintoneAdaptiveChunkSizeOption> getAdaptiveChunkSize();
+
+  @Config("circuit_breaker")
+  @ConfigDefault("null")
+  Optional<KintoneCircuitBreakerOption> getCircuitBreaker();
+
+  @Config("max_concurrent_requests")
+  @ConfigDefault("1")
+  Integer getMaxConcurrentRequests();
+
+  @Config("max_concurrent_lookups")
+  @ConfigDefault("1")
+  Integer getMaxConcurrentLookups();
+
+  @Config("lookup_query_max_bytes")
+  @ConfigDefault("8192")
+  Integer getLookupQueryMaxBytes();
+
+  @Config("lookup_strategy")
+  @ConfigDefault("\"cursor\"")
+  KintoneLookupStrategy getLookupStrategy();
+
+  @Config("request_mode")
+  @ConfigDefault("\"single\"")
+  KintoneRequestMode getRequestMode();
+
+  @Config("pipeline_queue_size")
+  @ConfigDefault("4")
+  Integer getPipelineQueueSize();
+
+  @Config("max_domain_concurrency")
+  @ConfigDefault("null")
+  Optional<Integer> getMaxDomainConcurrency();
+
+  @Config("max_requests_per_second")
+  @ConfigDefault("null")
+  Optional<Double> getMaxRequestsPerSecond();
+
+  @Config("upsert_key_index")
+  @ConfigDefault("\"none\"")
+  KintoneUpsertKeyIndex getUpsertKeyIndex();
+
+  @Config("upsert_strategy")
+  @ConfigDefault("\"lookup\"")
+  KintoneUpsertStrategy getUpsertStrategy();
+
+  @Config("coalesce_duplicates")
+  @ConfigDefault("\"none\"")
+  KintoneCoalesce getCoalesceDuplicates();
+
+  @Config("skip_unchanged")
+  @ConfigDefault("false")
+  Boolean getSkipUnchanged();
+
+  @Config("upsert_key_cache_size")
+  @ConfigDefault("0")
+  Integer getUpsertKeyCacheSize();
+
+  @Config("upsert_key_index_directory")
+  @ConfigDefault("null")
+  Optional<String> getUpsertKeyIndexDirectory();
+
+  @Config("ledger_directory")
+  @ConfigDefault("null")
+  Optional<String> getLedgerDirectory();
+
+  @Config("ledger_rebuild")
+  @ConfigDefault("false")
+  Boolean getLedgerRebuild();
+
+  @Config("on_record_error")
+  @ConfigDefault("\"abort\"")
+  KintoneOnRecordError getOnRecordError();
+
+  @Config("dead_letter_directory")
+  @ConfigDefault("null")
+  Optional<String> getDeadLetterDirectory();
+
+  @Config("checkpoint_directory")
+  @ConfigDefault("null")
+  Optional<String> getCheckpointDirectory();
+
+  @Config("checkpoint_interval")
+  @ConfigDefault("10000")
+  Integer getCheckpointInterval();
+
   @Config("retry_options")
   @ConfigDefault("{}")
   KintoneRetryOption getRetryOptions();
@@ -92,4 +181,20 @@ public interface PluginTask extends Task {
   Set<Column> getDerivedColumns();
 
   void setDerivedColumns(Set<Column> columns);
+
+  Map<String, FieldType> getFieldTypes();
+
+  void setFieldTypes(Map<String, FieldType> fieldTypes);
+
+  Optional<String> getUpsertKeyIndexFile();
+
+  void setUpsertKeyIndexFile(Optional<String> upsertKeyIndexFile);
+
+  Optional<String> getLedgerFile();
+
+  void setLedgerFile(Optional<String> ledgerFile);
+
+  Optional<String> getCheckpointId();
+
+  void setCheckpointId(Optional<String> checkpointId);
 }
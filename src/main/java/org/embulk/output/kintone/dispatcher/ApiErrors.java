@@ -0,0 +1,37 @@
+package org.embulk.output.kintone.dispatcher;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kintone.client.exception.KintoneApiRuntimeException;
+import java.io.IOException;
+
+/** Reads the errors kintone returns in the content of failed requests. */
+public class ApiErrors {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  public static JsonNode readContent(KintoneApiRuntimeException exception) {
+    try {
+      return exception.getContent() == null ? null : MAPPER.readTree(exception.getContent());
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /** Returns the code of the error, or of the failed request for a bulk request. */
+  public static String getErrorCode(KintoneApiRuntimeException exception) {
+    JsonNode content = readContent(exception);
+    if (content == null) {
+      return null;
+    }
+    JsonNode results = content.get("results");
+    if (results == null) {
+      return content.has("code") ? content.get("code").textValue() : null;
+    }
+    for (JsonNode result : results) {
+      if (result.has("code")) {
+        return result.get("code").textValue();
+      }
+    }
+    return null;
+  }
+}
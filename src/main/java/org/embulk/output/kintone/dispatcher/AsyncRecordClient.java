@@ -0,0 +1,153 @@
+package org.embulk.output.kintone.dispatcher;
+
+import com.kintone.client.BulkRequestClient;
+import com.kintone.client.RecordClient;
+import com.kintone.client.api.bulk.BulkRequestsRequest;
+import com.kintone.client.api.bulk.BulkRequestsResponseBody;
+import com.kintone.client.api.record.CreateCursorRequest;
+import com.kintone.client.api.record.GetRecordsByCursorResponseBody;
+import com.kintone.client.api.record.GetRecordsRequest;
+import com.kintone.client.api.record.GetRecordsResponseBody;
+import com.kintone.client.api.record.UpdateRecordsRequest;
+import com.kintone.client.api.record.UpdateRecordsResponseBody;
+import com.kintone.client.model.record.Record;
+import com.kintone.client.model.record.RecordForUpdate;
+import com.kintone.client.model.record.RecordRevision;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Record API returning futures. The kintone client underneath is blocking, so the calls run on a
+ * pool sized by the in-flight window, each holding a permit of the domain governor while it runs,
+ * after the circuit breaker of the app lets it through.
+ */
+public class AsyncRecordClient implements AutoCloseable {
+  private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+  private final RecordClient record;
+  private final BulkRequestClient bulkRequests;
+  private final DomainGovernor governor;
+  private final CircuitBreaker breaker;
+  private final ExecutorService executor;
+  private final AtomicLong governorWaitNanos = new AtomicLong();
+  private final AtomicLong breakerWaitNanos = new AtomicLong();
+
+  public AsyncRecordClient(
+      RecordClient record, BulkRequestClient bulkRequests, DomainGovernor governor, int threads) {
+    this(record, bulkRequests, governor, null, threads);
+  }
+
+  public AsyncRecordClient(
+      RecordClient record,
+      BulkRequestClient bulkRequests,
+      DomainGovernor governor,
+      CircuitBreaker breaker,
+      int threads) {
+    this.record = record;
+    this.bulkRequests = bulkRequests;
+    this.governor = governor;
+    this.breaker = breaker;
+    executor = Executors.newFixedThreadPool(threads, AsyncRecordClient::newThread);
+  }
+
+  public CompletableFuture<List<Long>> addRecords(long app, List<Record> records) {
+    return supply(() -> record.addRecords(app, records));
+  }
+
+  public CompletableFuture<List<RecordRevision>> updateRecords(
+      long app, List<RecordForUpdate> records) {
+    return supply(() -> record.updateRecords(app, records));
+  }
+
+  public CompletableFuture<UpdateRecordsResponseBody> updateRecords(
+      UpdateRecordsRequest request) {
+    return supply(() -> record.updateRecords(request));
+  }
+
+  public CompletableFuture<Void> deleteRecords(long app, List<Long> ids) {
+    return supply(
+        () -> {
+          record.deleteRecords(app, ids);
+          return null;
+        });
+  }
+
+  public CompletableFuture<String> createCursor(long app, List<String> fields, String query) {
+    return supply(() -> record.createCursor(app, fields, query));
+  }
+
+  public CompletableFuture<String> createCursor(CreateCursorRequest request) {
+    return supply(() -> record.createCursor(request).getId());
+  }
+
+  public CompletableFuture<GetRecordsByCursorResponseBody> getRecordsByCursor(String cursorId) {
+    return supply(() -> record.getRecordsByCursor(cursorId));
+  }
+
+  public CompletableFuture<Void> deleteCursor(String cursorId) {
+    return supply(
+        () -> {
+          record.deleteCursor(cursorId);
+          return null;
+        });
+  }
+
+  public CompletableFuture<GetRecordsResponseBody> getRecords(GetRecordsRequest request) {
+    return supply(() -> record.getRecords(request));
+  }
+
+  public CompletableFuture<BulkRequestsResponseBody> bulkRequests(BulkRequestsRequest request) {
+    return supply(() -> bulkRequests.bulkRequests(request));
+  }
+
+  public long getGovernorWaitNanos() {
+    return governorWaitNanos.get();
+  }
+
+  public long getBreakerWaitNanos() {
+    return breakerWaitNanos.get();
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  private <T> CompletableFuture<T> supply(Supplier<T> call) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          if (breaker != null) {
+            breakerWaitNanos.addAndGet(breaker.acquire());
+          }
+          RuntimeException failure = null;
+          try {
+            governorWaitNanos.addAndGet(governor.acquire());
+            try {
+              return call.get();
+            } finally {
+              governor.release();
+            }
+          } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+          } finally {
+            if (breaker != null) {
+              breaker.release(failure);
+            }
+          }
+        },
+        executor);
+  }
+
+  private static Thread newThread(Runnable runnable) {
+    Thread thread =
+        new Thread(
+            runnable, String.format("embulk-output-kintone-%d", THREAD_NUMBER.incrementAndGet()));
+    thread.setDaemon(true);
+    return thread;
+  }
+}
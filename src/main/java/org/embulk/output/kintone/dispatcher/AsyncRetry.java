@@ -0,0 +1,134 @@
+package org.embulk.output.kintone.dispatcher;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.embulk.output.kintone.KintoneRetryOption;
+import org.embulk.util.retryhelper.RetryGiveupException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retries an asynchronous operation by the policy of its error, waiting on a shared scheduler
+ * instead of holding a thread. The waits of all the operations count against the budget of the
+ * task. Gives up the same way as the retry helper does.
+ */
+public class AsyncRetry {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final ScheduledExecutorService SCHEDULER =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "embulk-output-kintone-retry");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private final Function<Exception, RetryPolicy> policies;
+  private final long budgetMillis;
+  private final AtomicLong waitedMillis = new AtomicLong();
+
+  public AsyncRetry(KintoneRetryOption option, RetryPolicies policies) {
+    this(option, (Function<Exception, RetryPolicy>) policies::of);
+  }
+
+  public AsyncRetry(KintoneRetryOption option, Predicate<Exception> isRetryable) {
+    this(
+        option,
+        (Function<Exception, RetryPolicy>)
+            e -> isRetryable.test(e) ? RetryPolicy.of(option) : null);
+  }
+
+  private AsyncRetry(KintoneRetryOption option, Function<Exception, RetryPolicy> policies) {
+    this.policies = policies;
+    budgetMillis = option.getBudgetMillis().orElse(Long.MAX_VALUE);
+  }
+
+  public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> operation) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    attempt(operation, result, 0, 0);
+    return result;
+  }
+
+  private <T> void attempt(
+      Supplier<CompletableFuture<T>> operation,
+      CompletableFuture<T> result,
+      int retryCount,
+      long lastWaitMillis) {
+    CompletableFuture<T> future;
+    try {
+      future = operation.get();
+    } catch (RuntimeException e) {
+      future = new CompletableFuture<>();
+      future.completeExceptionally(e);
+    }
+    future.whenComplete(
+        (value, throwable) -> {
+          if (throwable == null) {
+            result.complete(value);
+            return;
+          }
+          Throwable cause = unwrap(throwable);
+          if (!(cause instanceof Exception)) {
+            result.completeExceptionally(cause);
+            return;
+          }
+          Exception exception = (Exception) cause;
+          RetryPolicy policy = policies.apply(exception);
+          long wait = policy == null ? 0 : policy.getWaitMillis(lastWaitMillis);
+          if (policy == null || retryCount >= policy.getLimit() || !spend(wait)) {
+            result.completeExceptionally(
+                new RuntimeException(
+                    "kintone throw exception", new RetryGiveupException(exception)));
+            return;
+          }
+          String message =
+              String.format(
+                  "Retrying %d/%d after %d ms. Message: %s",
+                  retryCount + 1, policy.getLimit(), wait, exception.getMessage());
+          if ((retryCount + 1) % 3 == 0) {
+            LOGGER.warn(message, exception);
+          } else {
+            LOGGER.warn(message);
+          }
+          SCHEDULER.schedule(
+              () -> attempt(operation, result, retryCount + 1, wait),
+              wait,
+              TimeUnit.MILLISECONDS);
+        });
+  }
+
+  private boolean spend(long wait) {
+    long waited = waitedMillis.addAndGet(wait);
+    if (waited <= budgetMillis) {
+      return true;
+    }
+    LOGGER.warn(String.format("Gave up retrying after the budget of %d ms", budgetMillis));
+    return false;
+  }
+
+  /** Waits for the future, throwing the runtime exception it failed with as is. */
+  public static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      Throwable cause = unwrap(e);
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw e;
+    }
+  }
+
+  public static Throwable unwrap(Throwable throwable) {
+    return throwable instanceof CompletionException && throwable.getCause() != null
+        ? throwable.getCause()
+        : throwable;
+  }
+}
@@ -0,0 +1,233 @@
+package org.embulk.output.kintone.dispatcher;
+
+import com.kintone.client.api.common.KintoneRequest;
+import com.kintone.client.api.common.KintoneResponseBody;
+import com.kintone.client.api.record.AddRecordsRequest;
+import com.kintone.client.api.record.AddRecordsResponseBody;
+import com.kintone.client.api.record.DeleteRecordsRequest;
+import com.kintone.client.api.record.UpdateRecordsRequest;
+import com.kintone.client.api.record.UpdateRecordsResponseBody;
+import com.kintone.client.model.record.Record;
+import com.kintone.client.model.record.RecordForUpdate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.embulk.output.kintone.record.Id;
+
+public abstract class Chunk {
+  private final Collection<String> keys;
+
+  protected Chunk(Collection<String> keys) {
+    this.keys = keys;
+  }
+
+  public static Chunk add(List<Record> records) {
+    return add(records, (added, ids) -> {});
+  }
+
+  /** Returns the chunk notifying the records and their ids once they are added. */
+  public static Chunk add(List<Record> records, BiConsumer<List<Record>, List<Long>> onAdded) {
+    return new Add(records, onAdded);
+  }
+
+  public static Chunk update(List<RecordForUpdate> records, Collection<String> keys) {
+    return update(records, keys, updated -> {});
+  }
+
+  /** Returns the chunk notifying the records once they are updated. */
+  public static Chunk update(
+      List<RecordForUpdate> records,
+      Collection<String> keys,
+      Consumer<List<RecordForUpdate>> onUpdated) {
+    return new Update(records, keys, onUpdated, false);
+  }
+
+  /**
+   * Returns the chunk updating the records of the update keys, which kintone inserts when they do
+   * not exist.
+   */
+  public static Chunk upsert(
+      List<RecordForUpdate> records,
+      Collection<String> keys,
+      Consumer<List<RecordForUpdate>> onUpserted) {
+    return new Update(records, keys, onUpserted, true);
+  }
+
+  public static Chunk delete(List<Long> ids) {
+    return new Delete(ids);
+  }
+
+  public Collection<String> getKeys() {
+    return keys;
+  }
+
+  public abstract int size();
+
+  /** Returns the record, the record for update or the id at the position. */
+  public abstract Object getRecord(int position);
+
+  /** Returns the chunk of the records at the positions, notifying the same way as this chunk. */
+  public abstract Chunk select(List<Integer> positions);
+
+  public abstract CompletableFuture<Void> send(AsyncRecordClient client, long app);
+
+  public abstract KintoneRequest toRequest(long app);
+
+  /** Receives the response to the request sent in a bulk request. */
+  public void complete(KintoneResponseBody response) {}
+
+  private static <T> List<T> subList(List<T> list, List<Integer> positions) {
+    return positions.stream().map(list::get).collect(Collectors.toList());
+  }
+
+  private static class Add extends Chunk {
+    private final List<Record> records;
+    private final BiConsumer<List<Record>, List<Long>> onAdded;
+
+    private Add(List<Record> records, BiConsumer<List<Record>, List<Long>> onAdded) {
+      super(Collections.emptyList());
+      this.records = records;
+      this.onAdded = onAdded;
+    }
+
+    @Override
+    public int size() {
+      return records.size();
+    }
+
+    @Override
+    public Object getRecord(int position) {
+      return records.get(position);
+    }
+
+    @Override
+    public Chunk select(List<Integer> positions) {
+      return new Add(subList(records, positions), onAdded);
+    }
+
+    @Override
+    public CompletableFuture<Void> send(AsyncRecordClient client, long app) {
+      return client.addRecords(app, records).thenAccept(ids -> onAdded.accept(records, ids));
+    }
+
+    @Override
+    public void complete(KintoneResponseBody response) {
+      if (response instanceof AddRecordsResponseBody) {
+        onAdded.accept(records, ((AddRecordsResponseBody) response).getIds());
+      }
+    }
+
+    @Override
+    public KintoneRequest toRequest(long app) {
+      return new AddRecordsRequest().setApp(app).setRecords(records);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("addRecords(%d records)", records.size());
+    }
+  }
+
+  private static class Update extends Chunk {
+    private final List<RecordForUpdate> records;
+    private final Consumer<List<RecordForUpdate>> onUpdated;
+    private final boolean upsert;
+
+    private Update(
+        List<RecordForUpdate> records,
+        Collection<String> keys,
+        Consumer<List<RecordForUpdate>> onUpdated,
+        boolean upsert) {
+      super(keys);
+      this.records = records;
+      this.onUpdated = onUpdated;
+      this.upsert = upsert;
+    }
+
+    @Override
+    public int size() {
+      return records.size();
+    }
+
+    @Override
+    public Object getRecord(int position) {
+      return records.get(position);
+    }
+
+    @Override
+    public Chunk select(List<Integer> positions) {
+      return new Update(subList(records, positions), getKeys(), onUpdated, upsert);
+    }
+
+    @Override
+    public CompletableFuture<Void> send(AsyncRecordClient client, long app) {
+      return upsert
+          ? client
+              .updateRecords((UpdateRecordsRequest) toRequest(app))
+              .thenAccept(response -> onUpdated.accept(records))
+          : client.updateRecords(app, records).thenAccept(revisions -> onUpdated.accept(records));
+    }
+
+    @Override
+    public void complete(KintoneResponseBody response) {
+      if (response instanceof UpdateRecordsResponseBody) {
+        onUpdated.accept(records);
+      }
+    }
+
+    @Override
+    public KintoneRequest toRequest(long app) {
+      UpdateRecordsRequest request = new UpdateRecordsRequest().setApp(app).setRecords(records);
+      return upsert ? request.setUpsert(true) : request;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "updateRecords(%d records%s)", records.size(), upsert ? ", upsert" : "");
+    }
+  }
+
+  private static class Delete extends Chunk {
+    private final List<Long> ids;
+
+    private Delete(List<Long> ids) {
+      super(ids.stream().map(id -> Id.FIELD + "=" + id).collect(Collectors.toList()));
+      this.ids = ids;
+    }
+
+    @Override
+    public int size() {
+      return ids.size();
+    }
+
+    @Override
+    public Object getRecord(int position) {
+      return ids.get(position);
+    }
+
+    @Override
+    public Chunk select(List<Integer> positions) {
+      return new Delete(subList(ids, positions));
+    }
+
+    @Override
+    public CompletableFuture<Void> send(AsyncRecordClient client, long app) {
+      return client.deleteRecords(app, ids);
+    }
+
+    @Override
+    public KintoneRequest toRequest(long app) {
+      return new DeleteRecordsRequest().setApp(app).setIds(ids);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("deleteRecords(%d records)", ids.size());
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package org.embulk.output.kintone.dispatcher;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import org.embulk.config.ConfigException;
+import org.embulk.output.kintone.KintoneAdaptiveChunkSizeOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chunk size that grows additively while the p95 latency of the recent requests stays under the
+ * target, and shrinks multiplicatively when kintone reports lock contention or a request times out.
+ */
+public class ChunkSizeController {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  // kintone accepts at most 100 records per request
+  private static final int MAX_SIZE = 100;
+  private final KintoneAdaptiveChunkSizeOption option;
+  private final long[] latencies;
+  private int count;
+  private int size;
+
+  private ChunkSizeController(int size, KintoneAdaptiveChunkSizeOption option) {
+    this.option = option;
+    this.size = size;
+    latencies = option == null ? new long[0] : new long[option.getWindowSize()];
+  }
+
+  public static ChunkSizeController fixed(int size) {
+    return new ChunkSizeController(size, null);
+  }
+
+  public static ChunkSizeController adaptive(int size, KintoneAdaptiveChunkSizeOption option) {
+    if (option.getMinSize() < 1 || option.getMinSize() > option.getMaxSize()) {
+      throw new ConfigException("adaptive_chunk_size requires 0 < min_size <= max_size.");
+    }
+    if (option.getMaxSize() > MAX_SIZE) {
+      throw new ConfigException(
+          String.format("adaptive_chunk_size requires max_size <= %d.", MAX_SIZE));
+    }
+    if (option.getDecreaseFactor() <= 0 || option.getDecreaseFactor() >= 1) {
+      throw new ConfigException("adaptive_chunk_size requires 0 < decrease_factor < 1.");
+    }
+    if (option.getWindowSize() < 1) {
+      throw new ConfigException("adaptive_chunk_size requires window_size greater than 0.");
+    }
+    int initial = Math.max(option.getMinSize(), Math.min(option.getMaxSize(), size));
+    return new ChunkSizeController(initial, option);
+  }
+
+  public synchronized int get() {
+    return size;
+  }
+
+  public synchronized void onSuccess(long latencyMillis) {
+    if (option == null) {
+      return;
+    }
+    latencies[count++ % latencies.length] = latencyMillis;
+    if (count < latencies.length) {
+      return;
+    }
+    long p95 = p95();
+    if (p95 < option.getTargetLatencyMillis()) {
+      change(Math.min(option.getMaxSize(), size + option.getIncreaseStep()), p95);
+    }
+  }
+
+  public synchronized void onThrottled() {
+    if (option == null) {
+      return;
+    }
+    change(Math.max(option.getMinSize(), (int) (size * option.getDecreaseFactor())), -1);
+  }
+
+  private void change(int size, long p95) {
+    count = 0;
+    if (this.size == size) {
+      return;
+    }
+    LOGGER.info(
+        p95 < 0
+            ? String.format("Chunk size decreased from %d to %d", this.size, size)
+            : String.format(
+                "Chunk size increased from %d to %d (p95 latency %d ms)", this.size, size, p95));
+    this.size = size;
+  }
+
+  private long p95() {
+    long[] sorted = Arrays.copyOf(latencies, latencies.length);
+    Arrays.sort(sorted);
+    return sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+  }
+}
@@ -0,0 +1,185 @@
+package org.embulk.output.kintone.dispatcher;
+
+import com.kintone.client.exception.KintoneApiRuntimeException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.embulk.config.ConfigException;
+import org.embulk.output.kintone.KintoneCircuitBreakerOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pauses the requests to a kintone app from all the task outputs in the JVM when the rate of lock
+ * errors over the recent seconds crosses the threshold. After the pause a few requests probe the
+ * app, and the requests allowed in flight double with every round of probes that succeeds until
+ * the circuit closes again. A lock error while probing pauses the requests again.
+ */
+public class CircuitBreaker {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+  private static final List<String> LOCK_ERROR_CODES =
+      Arrays.asList(
+          "GAIA_RE18", // データベースのロックに失敗したため、変更を保存できませんでした。時間をおいて再度お試しください。
+          "GAIA_DA02" // データベースのロックに失敗したため、変更を保存できませんでした。時間をおいて再度お試しください。
+          );
+  private final String name;
+  private final KintoneCircuitBreakerOption option;
+  private final long[] seconds;
+  private final int[] requests;
+  private final int[] lockErrors;
+  private State state = State.CLOSED;
+  private long openedNanos;
+  private int inFlight;
+  private int allowed;
+  private int succeeded;
+  private int step;
+
+  private enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private CircuitBreaker(String name, KintoneCircuitBreakerOption option) {
+    this.name = name;
+    this.option = option;
+    seconds = new long[option.getWindowSeconds()];
+    requests = new int[option.getWindowSeconds()];
+    lockErrors = new int[option.getWindowSeconds()];
+  }
+
+  public static CircuitBreaker of(String domain, long app, KintoneCircuitBreakerOption option) {
+    if (option.getWindowSeconds() < 1) {
+      throw new ConfigException("circuit_breaker requires window_seconds greater than 0.");
+    }
+    if (option.getLockErrorRate() <= 0 || option.getLockErrorRate() > 1) {
+      throw new ConfigException("circuit_breaker requires 0 < lock_error_rate <= 1.");
+    }
+    if (option.getHalfOpenRequests() < 1) {
+      throw new ConfigException("circuit_breaker requires half_open_requests greater than 0.");
+    }
+    if (option.getRampUpSteps() < 0) {
+      throw new ConfigException("circuit_breaker requires ramp_up_steps of 0 or more.");
+    }
+    return BREAKERS.computeIfAbsent(
+        String.format("%s/%d", domain, app), name -> new CircuitBreaker(name, option));
+  }
+
+  /**
+   * Waits while the circuit is open, or while the half-open circuit has as many requests in flight
+   * as it allows, and returns the nanoseconds waited.
+   */
+  public synchronized long acquire() {
+    long started = System.nanoTime();
+    try {
+      while (true) {
+        if (state == State.OPEN) {
+          long openNanos = TimeUnit.MILLISECONDS.toNanos(option.getOpenMillis());
+          long remaining = openedNanos + openNanos - System.nanoTime();
+          if (remaining > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            continue;
+          }
+          halfOpen();
+        }
+        if (state == State.CLOSED || inFlight < allowed) {
+          inFlight++;
+          return System.nanoTime() - started;
+        }
+        wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DispatchException(e);
+    }
+  }
+
+  /** Records the result of a request, with the failure of the request or null. */
+  public synchronized void release(Throwable throwable) {
+    inFlight--;
+    boolean isLockError = isLockError(throwable);
+    if (state == State.HALF_OPEN) {
+      if (isLockError) {
+        open();
+      } else if (++succeeded >= allowed) {
+        rampUp();
+      }
+    } else if (state == State.CLOSED) {
+      record(isLockError);
+    }
+    notifyAll();
+  }
+
+  private void record(boolean isLockError) {
+    long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    int bucket = (int) (second % seconds.length);
+    if (seconds[bucket] != second) {
+      seconds[bucket] = second;
+      requests[bucket] = 0;
+      lockErrors[bucket] = 0;
+    }
+    requests[bucket]++;
+    if (isLockError) {
+      lockErrors[bucket]++;
+    }
+    int totalRequests = 0;
+    int totalLockErrors = 0;
+    for (int i = 0; i < seconds.length; i++) {
+      if (second - seconds[i] < seconds.length) {
+        totalRequests += requests[i];
+        totalLockErrors += lockErrors[i];
+      }
+    }
+    if (isLockError
+        && totalRequests >= option.getMinRequests()
+        && totalLockErrors >= totalRequests * option.getLockErrorRate()) {
+      LOGGER.warn(
+          String.format(
+              "Lock errors in %d of %d requests to %s in %d seconds",
+              totalLockErrors, totalRequests, name, seconds.length));
+      open();
+    }
+  }
+
+  private void open() {
+    state = State.OPEN;
+    openedNanos = System.nanoTime();
+    Arrays.fill(requests, 0);
+    Arrays.fill(lockErrors, 0);
+    LOGGER.warn(String.format("Paused the requests to %s for %d ms", name, option.getOpenMillis()));
+  }
+
+  private void halfOpen() {
+    state = State.HALF_OPEN;
+    allowed = option.getHalfOpenRequests();
+    succeeded = 0;
+    step = 0;
+    LOGGER.info(String.format("Probing %s with %d requests", name, allowed));
+  }
+
+  private void rampUp() {
+    if (step++ >= option.getRampUpSteps()) {
+      state = State.CLOSED;
+      LOGGER.info(String.format("Resumed the requests to %s", name));
+      return;
+    }
+    allowed *= 2;
+    succeeded = 0;
+    LOGGER.info(String.format("Probing %s with %d requests", name, allowed));
+  }
+
+  static boolean isLockError(Throwable throwable) {
+    for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+      if (cause instanceof KintoneApiRuntimeException) {
+        return LOCK_ERROR_CODES.contains(
+            ApiErrors.getErrorCode((KintoneApiRuntimeException) cause));
+      }
+    }
+    return false;
+  }
+}
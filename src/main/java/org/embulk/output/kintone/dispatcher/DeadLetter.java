@@ -0,0 +1,205 @@
+package org.embulk.output.kintone.dispatcher;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.kintone.client.exception.KintoneApiRuntimeException;
+import com.kintone.client.model.record.Record;
+import com.kintone.client.model.record.RecordForUpdate;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Isolates the records kintone rejects from their chunks and writes them to a JSON Lines file, so
+ * that the other records of the chunks are sent. A chunk is split by the positions of the records
+ * the error points to, or else into halves until the rejected records are found.
+ */
+public class DeadLetter implements AutoCloseable {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final List<String> RECORD_ERROR_CODES =
+      Arrays.asList(
+          "CB_VA01", // 入力内容が正しくありません。
+          "GAIA_RE01" // 指定したレコード（id: x）が見つかりません。
+          );
+  private static final Pattern RECORD_ERROR_KEY = Pattern.compile("^records\\[(\\d+)]");
+  private final File file;
+  private Writer writer;
+  private long count;
+
+  public DeadLetter(File file) {
+    this.file = file;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  /** Sends the chunk by the function, isolating the records kintone rejects. */
+  public CompletableFuture<Void> send(Chunk chunk, Function<Chunk, CompletableFuture<Void>> send) {
+    return send.apply(chunk)
+        .handle(
+            (ignored, throwable) -> {
+              if (throwable == null) {
+                return CompletableFuture.<Void>completedFuture(null);
+              }
+              KintoneApiRuntimeException cause = getRecordError(throwable);
+              if (cause == null) {
+                CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(AsyncRetry.unwrap(throwable));
+                return failed;
+              }
+              return isolate(chunk, cause, send);
+            })
+        .thenCompose(Function.identity());
+  }
+
+  @Override
+  public synchronized void close() {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.close();
+    } catch (IOException e) {
+      throw new DispatchException(e);
+    }
+  }
+
+  private CompletableFuture<Void> isolate(
+      Chunk chunk,
+      KintoneApiRuntimeException cause,
+      Function<Chunk, CompletableFuture<Void>> send) {
+    if (chunk.size() == 1) {
+      write(chunk.getRecord(0), cause);
+      return CompletableFuture.completedFuture(null);
+    }
+    List<Integer> positions = getErrorPositions(cause, chunk.size());
+    if (!positions.isEmpty()) {
+      positions.forEach(position -> write(chunk.getRecord(position), cause));
+      List<Integer> rest =
+          IntStream.range(0, chunk.size())
+              .filter(position -> !positions.contains(position))
+              .boxed()
+              .collect(Collectors.toList());
+      return rest.isEmpty()
+          ? CompletableFuture.completedFuture(null)
+          : send(chunk.select(rest), send);
+    }
+    int half = chunk.size() / 2;
+    return send(chunk.select(range(0, half)), send)
+        .thenCompose(ignored -> send(chunk.select(range(half, chunk.size())), send));
+  }
+
+  private synchronized void write(Object record, KintoneApiRuntimeException cause) {
+    ObjectNode line = MAPPER.createObjectNode();
+    if (record instanceof Long) {
+      line.put("id", (Long) record);
+    } else if (record instanceof RecordForUpdate) {
+      RecordForUpdate recordForUpdate = (RecordForUpdate) record;
+      if (recordForUpdate.getId() != null) {
+        line.put("id", recordForUpdate.getId());
+      } else {
+        line.put("update_key", recordForUpdate.getUpdateKey().getField());
+        line.set("update_key_value", toJson(recordForUpdate.getUpdateKey().getValue()));
+      }
+      line.set("record", toJson(recordForUpdate.getRecord()));
+    } else {
+      line.set("record", toJson((Record) record));
+    }
+    line.set("error", toJson(cause));
+    try {
+      if (writer == null) {
+        writer =
+            new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+      }
+      writer.write(MAPPER.writeValueAsString(line));
+      writer.write('\n');
+      writer.flush();
+    } catch (IOException e) {
+      throw new DispatchException(e);
+    }
+    count++;
+  }
+
+  /** Returns the API error of the records, or null if the error is not about the records. */
+  public static KintoneApiRuntimeException getRecordError(Throwable throwable) {
+    for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+      if (cause instanceof KintoneApiRuntimeException) {
+        KintoneApiRuntimeException exception = (KintoneApiRuntimeException) cause;
+        String code = ApiErrors.getErrorCode(exception);
+        return exception.getStatusCode() == 400 && RECORD_ERROR_CODES.contains(code)
+            ? exception
+            : null;
+      }
+    }
+    return null;
+  }
+
+  /** Returns the positions of the records the error points to, such as {@code records[3].x}. */
+  static List<Integer> getErrorPositions(KintoneApiRuntimeException exception, int size) {
+    JsonNode content = ApiErrors.readContent(exception);
+    JsonNode errors = content == null ? null : content.get("errors");
+    TreeSet<Integer> positions = new TreeSet<>();
+    if (errors != null) {
+      for (Iterator<String> keys = errors.fieldNames(); keys.hasNext(); ) {
+        Matcher matcher = RECORD_ERROR_KEY.matcher(keys.next());
+        if (matcher.find()) {
+          int position = Integer.parseInt(matcher.group(1));
+          if (position < size) {
+            positions.add(position);
+          }
+        }
+      }
+    }
+    return new ArrayList<>(positions);
+  }
+
+  private static JsonNode toJson(KintoneApiRuntimeException exception) {
+    JsonNode content = ApiErrors.readContent(exception);
+    return content != null ? content : new TextNode(exception.getMessage());
+  }
+
+  private static JsonNode toJson(Record record) {
+    ObjectNode fields = MAPPER.createObjectNode();
+    if (record != null) {
+      for (String fieldCode : record.getFieldCodes(true)) {
+        fields.set(fieldCode, toJson(record.getFieldValue(fieldCode)));
+      }
+    }
+    return fields;
+  }
+
+  private static JsonNode toJson(Object value) {
+    try {
+      return MAPPER.valueToTree(value);
+    } catch (IllegalArgumentException e) {
+      return new TextNode(String.valueOf(value));
+    }
+  }
+
+  private static List<Integer> range(int from, int to) {
+    return IntStream.range(from, to).boxed().collect(Collectors.toList());
+  }
+}
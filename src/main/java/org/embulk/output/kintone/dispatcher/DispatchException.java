@@ -0,0 +1,11 @@
+package org.embulk.output.kintone.dispatcher;
+
+public class DispatchException extends RuntimeException {
+  public DispatchException(String message) {
+    super(message);
+  }
+
+  public DispatchException(Throwable cause) {
+    super(cause);
+  }
+}
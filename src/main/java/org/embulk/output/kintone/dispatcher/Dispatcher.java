@@ -0,0 +1,80 @@
+package org.embulk.output.kintone.dispatcher;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import org.embulk.config.ConfigException;
+
+public class Dispatcher {
+  private final int maxConcurrentRequests;
+  private final Semaphore window;
+  private final Map<String, CompletableFuture<?>> lastRequests = new ConcurrentHashMap<>();
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  public Dispatcher(int maxConcurrentRequests) {
+    if (maxConcurrentRequests < 1) {
+      throw new ConfigException("max_concurrent_requests must be greater than 0.");
+    }
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    window = new Semaphore(maxConcurrentRequests);
+  }
+
+  /**
+   * Starts the request once a slot of the in-flight window is free. A request waits for the
+   * previously dispatched requests sharing any of the keys, so that requests touching the same
+   * record are applied in order.
+   */
+  public <T> void dispatch(Collection<String> keys, Supplier<CompletableFuture<T>> request) {
+    throwIfFailed();
+    acquire(1);
+    CompletableFuture<?>[] dependencies =
+        keys.stream()
+            .map(lastRequests::get)
+            .filter(Objects::nonNull)
+            .distinct()
+            .toArray(CompletableFuture<?>[]::new);
+    CompletableFuture<?> future =
+        CompletableFuture.allOf(dependencies).thenCompose(ignored -> request.get());
+    keys.forEach(key -> lastRequests.put(key, future));
+    future.whenComplete(
+        (result, throwable) -> {
+          keys.forEach(key -> lastRequests.remove(key, future));
+          if (throwable != null) {
+            failure.compareAndSet(null, AsyncRetry.unwrap(throwable));
+          }
+          window.release();
+        });
+  }
+
+  /** Waits for every in-flight request and rethrows the first failure. */
+  public void await() {
+    acquire(maxConcurrentRequests);
+    window.release(maxConcurrentRequests);
+    throwIfFailed();
+  }
+
+  private void acquire(int permits) {
+    try {
+      window.acquire(permits);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DispatchException(e);
+    }
+  }
+
+  private void throwIfFailed() {
+    Throwable throwable = failure.get();
+    if (throwable == null) {
+      return;
+    }
+    if (throwable instanceof RuntimeException) {
+      throw (RuntimeException) throwable;
+    }
+    throw new DispatchException(throwable);
+  }
+}
@@ -0,0 +1,110 @@
+package org.embulk.output.kintone.dispatcher;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.embulk.config.ConfigException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the requests sent to a kintone domain by all the task outputs in the JVM, with a permit
+ * semaphore for the simultaneous requests and a token bucket for the request rate.
+ */
+public class DomainGovernor {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final Map<String, DomainGovernor> GOVERNORS = new ConcurrentHashMap<>();
+  private final Integer maxConcurrency;
+  private final Double maxRequestsPerSecond;
+  private final Semaphore permits;
+  private double tokens;
+  private long refilledNanos;
+
+  private DomainGovernor(Integer maxConcurrency, Double maxRequestsPerSecond) {
+    this.maxConcurrency = maxConcurrency;
+    this.maxRequestsPerSecond = maxRequestsPerSecond;
+    permits = maxConcurrency == null ? null : new Semaphore(maxConcurrency, true);
+    tokens = maxRequestsPerSecond == null ? 0 : capacity();
+    refilledNanos = System.nanoTime();
+  }
+
+  public static DomainGovernor of(
+      String domain, Integer maxConcurrency, Double maxRequestsPerSecond) {
+    if (maxConcurrency != null && maxConcurrency < 1) {
+      throw new ConfigException("max_domain_concurrency must be greater than 0.");
+    }
+    if (maxRequestsPerSecond != null && maxRequestsPerSecond <= 0) {
+      throw new ConfigException("max_requests_per_second must be greater than 0.");
+    }
+    DomainGovernor governor =
+        GOVERNORS.computeIfAbsent(
+            domain, key -> new DomainGovernor(maxConcurrency, maxRequestsPerSecond));
+    if (!Objects.equals(governor.maxConcurrency, maxConcurrency)
+        || !Objects.equals(governor.maxRequestsPerSecond, maxRequestsPerSecond)) {
+      LOGGER.warn(
+          String.format(
+              "Limits of %s are already max_domain_concurrency: %s, max_requests_per_second: %s",
+              domain, governor.maxConcurrency, governor.maxRequestsPerSecond));
+    }
+    return governor;
+  }
+
+  /** Waits for a permit and a token, and returns the nanoseconds waited. */
+  public long acquire() {
+    long started = System.nanoTime();
+    try {
+      if (permits != null) {
+        permits.acquire();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DispatchException(e);
+    }
+    try {
+      long delay = reserve();
+      if (delay > 0) {
+        TimeUnit.NANOSECONDS.sleep(delay);
+      }
+    } catch (InterruptedException e) {
+      // The permit is shared by all the tasks of the domain, so it must not leak
+      release();
+      Thread.currentThread().interrupt();
+      throw new DispatchException(e);
+    }
+    return System.nanoTime() - started;
+  }
+
+  public void release() {
+    if (permits != null) {
+      permits.release();
+    }
+  }
+
+  int getAvailablePermits() {
+    return permits == null ? Integer.MAX_VALUE : permits.availablePermits();
+  }
+
+  private synchronized long reserve() {
+    if (maxRequestsPerSecond == null) {
+      return 0;
+    }
+    long now = System.nanoTime();
+    tokens =
+        Math.min(
+            capacity(),
+            tokens + (now - refilledNanos) * maxRequestsPerSecond / TimeUnit.SECONDS.toNanos(1));
+    refilledNanos = now;
+    tokens -= 1;
+    return tokens >= 0
+        ? 0
+        : (long) Math.ceil(-tokens / maxRequestsPerSecond * TimeUnit.SECONDS.toNanos(1));
+  }
+
+  private double capacity() {
+    return Math.max(1, maxRequestsPerSecond);
+  }
+}
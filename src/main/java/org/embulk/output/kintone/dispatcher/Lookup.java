@@ -0,0 +1,91 @@
+package org.embulk.output.kintone.dispatcher;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.embulk.config.ConfigException;
+
+/**
+ * Splits the lookup of many keys into queries of a limited byte length, and runs them on a limited
+ * number of lanes at once.
+ */
+public class Lookup {
+  private final int maxQueryBytes;
+  private final int maxConcurrency;
+
+  public Lookup(int maxQueryBytes, int maxConcurrency) {
+    if (maxQueryBytes < 1) {
+      throw new ConfigException("lookup_query_max_bytes must be greater than 0.");
+    }
+    if (maxConcurrency < 1) {
+      throw new ConfigException("max_concurrent_lookups must be greater than 0.");
+    }
+    this.maxQueryBytes = maxQueryBytes;
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  /**
+   * Returns the queries of {@code fieldCode in (...)} covering the values, each no longer than the
+   * limit in UTF-8 unless a single value already exceeds it.
+   */
+  public List<String> split(String fieldCode, List<String> values) {
+    String prefix = fieldCode + " in (";
+    int fixedBytes = bytes(prefix) + bytes(")");
+    List<String> queries = new ArrayList<>();
+    StringBuilder query = new StringBuilder();
+    int queryBytes = 0;
+    for (String value : values) {
+      int valueBytes = bytes(value);
+      if (query.length() > 0 && fixedBytes + queryBytes + 1 + valueBytes > maxQueryBytes) {
+        queries.add(prefix + query + ")");
+        query.setLength(0);
+        queryBytes = 0;
+      }
+      if (query.length() > 0) {
+        query.append(',');
+        queryBytes++;
+      }
+      query.append(value);
+      queryBytes += valueBytes;
+    }
+    if (query.length() > 0) {
+      queries.add(prefix + query + ")");
+    }
+    return queries;
+  }
+
+  /**
+   * Runs the queries, at most the concurrency limit at once, and passes each result to the consumer
+   * one at a time.
+   */
+  public <T> CompletableFuture<Void> execute(
+      List<String> queries, Function<String, CompletableFuture<T>> query, Consumer<T> consumer) {
+    Object lock = new Object();
+    int lanes = Math.min(maxConcurrency, queries.size());
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[lanes];
+    for (int lane = 0; lane < lanes; lane++) {
+      CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+      for (int i = lane; i < queries.size(); i += lanes) {
+        String next = queries.get(i);
+        future =
+            future
+                .thenCompose(ignored -> query.apply(next))
+                .thenAccept(
+                    result -> {
+                      synchronized (lock) {
+                        consumer.accept(result);
+                      }
+                    });
+      }
+      futures[lane] = future;
+    }
+    return CompletableFuture.allOf(futures);
+  }
+
+  private static int bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8).length;
+  }
+}
@@ -0,0 +1,98 @@
+package org.embulk.output.kintone.dispatcher;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.embulk.config.ConfigException;
+
+public class Pipeline implements AutoCloseable {
+  private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+  private final BlockingQueue<Runnable> queue;
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private final Thread sender;
+
+  public Pipeline(int queueSize) {
+    if (queueSize < 1) {
+      throw new ConfigException("pipeline_queue_size must be greater than 0.");
+    }
+    queue = new ArrayBlockingQueue<>(queueSize);
+    sender =
+        new Thread(
+            this::run,
+            String.format("embulk-output-kintone-pipeline-%d", THREAD_NUMBER.incrementAndGet()));
+    sender.setDaemon(true);
+    sender.start();
+  }
+
+  /**
+   * Hands the stage over to the sender thread, blocking while the queue is full. Stages run one at a
+   * time in the order they were put, and are dropped once any of them has failed.
+   */
+  public void put(Runnable stage) {
+    throwIfFailed();
+    try {
+      queue.put(stage);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DispatchException(e);
+    }
+  }
+
+  /** Waits until every stage put so far has run and rethrows the first failure. */
+  public void await() {
+    Barrier barrier = new Barrier();
+    put(barrier);
+    try {
+      barrier.latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DispatchException(e);
+    }
+    throwIfFailed();
+  }
+
+  @Override
+  public void close() {
+    sender.interrupt();
+  }
+
+  private void run() {
+    while (true) {
+      Runnable stage;
+      try {
+        stage = queue.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (stage instanceof Barrier || failure.get() == null) {
+        try {
+          stage.run();
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      }
+    }
+  }
+
+  private void throwIfFailed() {
+    Throwable throwable = failure.get();
+    if (throwable == null) {
+      return;
+    }
+    if (throwable instanceof RuntimeException) {
+      throw (RuntimeException) throwable;
+    }
+    throw new DispatchException(throwable);
+  }
+
+  private static class Barrier implements Runnable {
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    @Override
+    public void run() {
+      latch.countDown();
+    }
+  }
+}
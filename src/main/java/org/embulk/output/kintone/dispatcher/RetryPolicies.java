@@ -0,0 +1,67 @@
+package org.embulk.output.kintone.dispatcher;
+
+import com.kintone.client.exception.KintoneApiRuntimeException;
+import com.kintone.client.exception.KintoneRuntimeException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import org.embulk.output.kintone.KintoneRetryOption;
+
+/**
+ * Chooses the retry policy of an error. API errors are retried by their error code or HTTP status
+ * as configured in {@code error_codes}, and failures to reach kintone by the default policy.
+ */
+public class RetryPolicies {
+  private static final List<String> DEFAULT_ERROR_CODES =
+      Arrays.asList(
+          "GAIA_TM12", // 作成できるカーソルの上限に達しているため、カーソルを作成できません。不要なカーソルを削除するか、しばらく経ってから再実行してください。
+          "GAIA_RE18", // データベースのロックに失敗したため、変更を保存できませんでした。時間をおいて再度お試しください。
+          "GAIA_DA02", // データベースのロックに失敗したため、変更を保存できませんでした。時間をおいて再度お試しください。
+          "429", // Too Many Requests
+          "503" // Service Unavailable
+          );
+  private final RetryPolicy policy;
+  private final Map<String, RetryPolicy> errorCodes = new HashMap<>();
+
+  public RetryPolicies(KintoneRetryOption option) {
+    policy = RetryPolicy.of(option);
+    DEFAULT_ERROR_CODES.forEach(code -> errorCodes.put(code, policy));
+    option
+        .getErrorCodes()
+        .forEach(
+            (code, errorCode) ->
+                errorCodes.put(
+                    code,
+                    new RetryPolicy(
+                        errorCode.getLimit().orElse(option.getLimit()),
+                        errorCode.getInitialWaitMillis().orElse(option.getInitialWaitMillis()),
+                        errorCode.getMaxWaitMillis().orElse(option.getMaxWaitMillis()))));
+  }
+
+  /** Returns the policy of the error, or null if the error is not retried. */
+  public RetryPolicy of(Throwable throwable) {
+    boolean isClient = throwable instanceof KintoneRuntimeException;
+    for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+      if (cause instanceof KintoneApiRuntimeException) {
+        KintoneApiRuntimeException exception = (KintoneApiRuntimeException) cause;
+        String code = ApiErrors.getErrorCode(exception);
+        return code != null && errorCodes.containsKey(code)
+            ? errorCodes.get(code)
+            : errorCodes.get(String.valueOf(exception.getStatusCode()));
+      }
+      // Only the failures of the client itself, not of the callbacks of the responses
+      if ((isClient || cause == throwable)
+          && (cause instanceof IOException || cause instanceof TimeoutException)) {
+        return policy;
+      }
+    }
+    return null;
+  }
+
+  public boolean isRetryable(Throwable throwable) {
+    return of(throwable) != null;
+  }
+}
@@ -0,0 +1,39 @@
+package org.embulk.output.kintone.dispatcher;
+
+import java.util.concurrent.ThreadLocalRandom;
+import org.embulk.output.kintone.KintoneRetryOption;
+
+/** How many times and how far apart the attempts failing with a kind of error are retried. */
+public class RetryPolicy {
+  private final int limit;
+  private final long initialWaitMillis;
+  private final long maxWaitMillis;
+
+  public RetryPolicy(int limit, long initialWaitMillis, long maxWaitMillis) {
+    this.limit = limit;
+    this.initialWaitMillis = initialWaitMillis;
+    this.maxWaitMillis = maxWaitMillis;
+  }
+
+  public static RetryPolicy of(KintoneRetryOption option) {
+    return new RetryPolicy(
+        option.getLimit(), option.getInitialWaitMillis(), option.getMaxWaitMillis());
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Returns a random wait between the initial wait and three times the last wait, up to the max
+   * wait. The first wait counts the initial wait as the last one. Unlike plain exponential backoff,
+   * tasks failing together do not retry together.
+   */
+  public long getWaitMillis(long lastWaitMillis) {
+    long last = Math.max(initialWaitMillis, lastWaitMillis);
+    long upper = Math.min(maxWaitMillis, last * 3);
+    return upper <= initialWaitMillis
+        ? upper
+        : ThreadLocalRandom.current().nextLong(initialWaitMillis, upper + 1);
+  }
+}
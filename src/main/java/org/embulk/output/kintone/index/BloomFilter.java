@@ -0,0 +1,99 @@
+package org.embulk.output.kintone.index;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import org.embulk.output.kintone.util.Hashes;
+
+/**
+ * Keys of existing records kept as a few bits each. A key reported absent certainly does not
+ * exist, while a key reported present might not, so it still has to be looked up.
+ */
+public class BloomFilter extends KeyFilter {
+  static final byte TYPE = 2;
+  private final LongBuffer bits;
+  private final int hashes;
+  private int size;
+
+  private BloomFilter(LongBuffer bits, int hashes, int size) {
+    this.bits = bits;
+    this.hashes = hashes;
+    this.size = size;
+  }
+
+  public static BloomFilter create(long expectedSize, double falsePositiveRate) {
+    long n = Math.max(expectedSize, 1);
+    long bitSize =
+        (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+    int words = (int) Math.min(Integer.MAX_VALUE - 8, (bitSize + Long.SIZE - 1) / Long.SIZE);
+    int hashes = (int) Math.max(1, Math.round((double) words * Long.SIZE / n * Math.log(2)));
+    return new BloomFilter(LongBuffer.wrap(new long[words]), hashes, 0);
+  }
+
+  public void add(Object value) {
+    String normalized = KeyIndex.normalize(value);
+    if (normalized == null) {
+      return;
+    }
+    long hash = Hashes.hash(normalized);
+    for (int i = 0; i < hashes; i++) {
+      long bit = index(hash, i);
+      int word = (int) (bit >>> 6);
+      bits.put(word, bits.get(word) | 1L << bit);
+    }
+    size++;
+  }
+
+  @Override
+  public boolean contains(Object value) {
+    String normalized = KeyIndex.normalize(value);
+    if (normalized == null) {
+      return false;
+    }
+    long hash = Hashes.hash(normalized);
+    for (int i = 0; i < hashes; i++) {
+      long bit = index(hash, i);
+      if ((bits.get((int) (bit >>> 6)) & 1L << bit) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean isExact() {
+    return false;
+  }
+
+  /** Returns the number of keys added, counting a duplicate key each time. */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  void write(DataOutputStream output) throws IOException {
+    output.writeByte(TYPE);
+    output.writeInt(size);
+    output.writeInt(hashes);
+    output.writeInt(bits.limit());
+    for (int i = 0; i < bits.limit(); i++) {
+      output.writeLong(bits.get(i));
+    }
+  }
+
+  static BloomFilter read(ByteBuffer buffer) {
+    int size = buffer.getInt();
+    int hashes = buffer.getInt();
+    int words = buffer.getInt();
+    ByteBuffer body = buffer.slice();
+    body.limit(words * Long.BYTES);
+    return new BloomFilter(body.asLongBuffer(), hashes, size);
+  }
+
+  private long index(long hash, int i) {
+    // Double hashing of the two halves of a 64 bit hash
+    long combined = (int) hash + (long) i * (int) (hash >>> 32);
+    return Math.floorMod(combined, (long) bits.limit() * Long.SIZE);
+  }
+}
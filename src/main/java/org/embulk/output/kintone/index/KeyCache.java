@@ -0,0 +1,48 @@
+package org.embulk.output.kintone.index;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.embulk.config.ConfigException;
+
+/** Bounded map of the ids of the records recently seen by key, evicting the least recently used. */
+public class KeyCache {
+  private final Map<String, Long> ids;
+
+  public KeyCache(int maxSize) {
+    if (maxSize < 0) {
+      throw new ConfigException("upsert_key_cache_size must not be negative.");
+    }
+    ids =
+        new LinkedHashMap<String, Long>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > maxSize;
+          }
+        };
+  }
+
+  /** Caches the key of an existing record, with its id if known. */
+  public synchronized void put(Object key, Long id) {
+    String normalized = KeyIndex.normalize(key);
+    if (normalized != null) {
+      ids.put(normalized, id);
+    }
+  }
+
+  /**
+   * Returns the ids of the cached keys among the keys, which stay available even if the keys are
+   * evicted afterwards.
+   */
+  public synchronized Map<String, Long> getAll(Collection<?> keys) {
+    Map<String, Long> found = new HashMap<>();
+    for (Object key : keys) {
+      String normalized = KeyIndex.normalize(key);
+      if (normalized != null && ids.containsKey(normalized)) {
+        found.put(normalized, ids.get(normalized));
+      }
+    }
+    return found;
+  }
+}
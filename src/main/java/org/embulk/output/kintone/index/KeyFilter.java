@@ -0,0 +1,13 @@
+package org.embulk.output.kintone.index;
+
+/** Keys of existing records, checked before a record is looked up. */
+public abstract class KeyFilter {
+  public abstract boolean contains(Object value);
+
+  public abstract int size();
+
+  /** Returns false if contains can report a key that does not exist. */
+  public boolean isExact() {
+    return true;
+  }
+}
@@ -0,0 +1,29 @@
+package org.embulk.output.kintone.index;
+
+import java.math.BigDecimal;
+import java.util.function.Consumer;
+
+/** Read-only keys of existing records, matched without a lookup per record. */
+public abstract class KeyIndex extends KeyFilter {
+  public abstract void forEach(Consumer<Object> action);
+
+  public static String normalize(Object value) {
+    return value == null
+        ? null
+        : value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString();
+  }
+
+  protected static Long toLong(Object value) {
+    if (value == null) {
+      return null;
+    }
+    if (value instanceof Number) {
+      return ((Number) value).longValue();
+    }
+    try {
+      return Long.parseLong(value.toString());
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package org.embulk.output.kintone.index;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.embulk.output.kintone.record.Id;
+
+/** Collects keys into growable primitive arrays, and sorts them into a read-only index. */
+public abstract class KeyIndexBuilder {
+  public static KeyIndexBuilder of(String field) {
+    return field.equals(Id.FIELD) ? new Ids() : new UpdateKeys();
+  }
+
+  public abstract void add(Object value);
+
+  public abstract KeyIndex build();
+
+  private static class Ids extends KeyIndexBuilder {
+    private long[] ids = new long[1024];
+    private int size;
+
+    @Override
+    public void add(Object value) {
+      Long id = KeyIndex.toLong(value);
+      if (id == null) {
+        return;
+      }
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+
+    @Override
+    public KeyIndex build() {
+      long[] sorted = Arrays.copyOf(ids, size);
+      Arrays.sort(sorted);
+      int unique = 0;
+      for (int i = 0; i < sorted.length; i++) {
+        if (i == 0 || sorted[i] != sorted[i - 1]) {
+          sorted[unique++] = sorted[i];
+        }
+      }
+      return new SortedLongIndex(LongBuffer.wrap(Arrays.copyOf(sorted, unique)));
+    }
+  }
+
+  private static class UpdateKeys extends KeyIndexBuilder {
+    private byte[] data = new byte[16384];
+    private int[] offsets = new int[1025];
+    private int size;
+
+    @Override
+    public void add(Object value) {
+      String normalized = KeyIndex.normalize(value);
+      if (normalized == null) {
+        return;
+      }
+      byte[] key = normalized.getBytes(StandardCharsets.UTF_8);
+      int from = offsets[size];
+      while (from + key.length > data.length) {
+        data = Arrays.copyOf(data, data.length * 2);
+      }
+      if (size + 1 == offsets.length) {
+        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      }
+      System.arraycopy(key, 0, data, from, key.length);
+      offsets[++size] = from + key.length;
+    }
+
+    @Override
+    public KeyIndex build() {
+      int[] order = new int[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      ByteBuffer keys = ByteBuffer.wrap(data);
+      sort(keys, order, new int[size], 0, size);
+      byte[] sortedData = new byte[offsets[size]];
+      int[] sortedOffsets = new int[size + 1];
+      int unique = 0;
+      for (int i = 0; i < size; i++) {
+        if (i > 0 && compare(keys, order[i - 1], order[i]) == 0) {
+          continue;
+        }
+        int from = offsets[order[i]];
+        int length = offsets[order[i] + 1] - from;
+        System.arraycopy(data, from, sortedData, sortedOffsets[unique], length);
+        sortedOffsets[unique + 1] = sortedOffsets[unique] + length;
+        unique++;
+      }
+      return new SortedStringIndex(
+          ByteBuffer.wrap(sortedData), IntBuffer.wrap(Arrays.copyOf(sortedOffsets, unique + 1)));
+    }
+
+    private void sort(ByteBuffer keys, int[] order, int[] buffer, int from, int to) {
+      if (to - from < 2) {
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      sort(keys, order, buffer, from, middle);
+      sort(keys, order, buffer, middle, to);
+      int left = from;
+      int right = middle;
+      for (int i = from; i < to; i++) {
+        buffer[i] =
+            right >= to || left < middle && compare(keys, order[left], order[right]) <= 0
+                ? order[left++]
+                : order[right++];
+      }
+      System.arraycopy(buffer, from, order, from, to - from);
+    }
+
+    private int compare(ByteBuffer keys, int a, int b) {
+      return SortedStringIndex.compare(
+          keys, offsets[a], offsets[a + 1], keys, offsets[b], offsets[b + 1]);
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package org.embulk.output.kintone.index;
+
+public class KeyIndexException extends RuntimeException {
+  public KeyIndexException(String message) {
+    super(message);
+  }
+
+  public KeyIndexException(Throwable cause) {
+    super(cause);
+  }
+}
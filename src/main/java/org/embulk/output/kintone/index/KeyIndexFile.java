@@ -0,0 +1,160 @@
+package org.embulk.output.kintone.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.embulk.output.kintone.KintoneOutputPlugin;
+
+/**
+ * Key index stored in a file with the field it indexes and the time it was fetched up to. The file
+ * is memory-mapped when loaded, so the keys stay off the heap, and it is loaded once per JVM and
+ * shared by the tasks.
+ */
+public class KeyIndexFile {
+  private static final Map<String, KeyFilter> LOADED = new ConcurrentHashMap<>();
+  private final File file;
+  private final String field;
+  private final long watermark;
+  private final KeyFilter filter;
+
+  private KeyIndexFile(File file, String field, long watermark, KeyFilter filter) {
+    this.file = file;
+    this.field = field;
+    this.watermark = watermark;
+    this.filter = filter;
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  public long getWatermark() {
+    return watermark;
+  }
+
+  public KeyFilter getFilter() {
+    return filter;
+  }
+
+  /** Returns the keys of a file that holds an exact index rather than a Bloom filter. */
+  public KeyIndex getIndex() {
+    if (!filter.isExact()) {
+      throw new KeyIndexException(String.format("%s does not hold an exact key index", file));
+    }
+    return (KeyIndex) filter;
+  }
+
+  /** Writes the index handed from the transaction to the tasks into a temporary file. */
+  public static String write(KeyFilter index) {
+    try {
+      File file =
+          File.createTempFile(String.format("%s.", KintoneOutputPlugin.class.getName()), ".index");
+      write(file, "", 0, index);
+      return file.getPath();
+    } catch (IOException e) {
+      throw new KeyIndexException(e);
+    }
+  }
+
+  public static void write(File file, String field, long watermark, KeyFilter index) {
+    replace(
+        file,
+        output -> {
+          byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+          output.writeInt(bytes.length);
+          output.write(bytes);
+          output.writeLong(watermark);
+          if (index instanceof SortedLongIndex) {
+            ((SortedLongIndex) index).write(output);
+          } else if (index instanceof SortedStringIndex) {
+            ((SortedStringIndex) index).write(output);
+          } else if (index instanceof BloomFilter) {
+            ((BloomFilter) index).write(output);
+          } else {
+            throw new KeyIndexException("Only a sorted index or a Bloom filter can be written");
+          }
+        });
+  }
+
+  /** Replaces the file atomically, so that a failed write leaves the previous file intact. */
+  static void replace(File file, Writer writer) {
+    try {
+      File temp =
+          File.createTempFile(
+              file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+      try {
+        try (DataOutputStream output =
+            new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+          writer.write(output);
+        }
+        Files.move(
+            temp.toPath(),
+            file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temp.toPath());
+      }
+    } catch (IOException e) {
+      throw new KeyIndexException(e);
+    }
+    LOADED.remove(file.getPath());
+  }
+
+  static ByteBuffer map(File file) {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (IOException e) {
+      throw new KeyIndexException(e);
+    }
+  }
+
+  public static KeyIndexFile open(File file) {
+    ByteBuffer buffer = map(file);
+    try {
+      byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      String field = new String(bytes, StandardCharsets.UTF_8);
+      long watermark = buffer.getLong();
+      byte type = buffer.get();
+      switch (type) {
+        case SortedLongIndex.TYPE:
+          return new KeyIndexFile(file, field, watermark, SortedLongIndex.read(buffer));
+        case SortedStringIndex.TYPE:
+          return new KeyIndexFile(file, field, watermark, SortedStringIndex.read(buffer));
+        case BloomFilter.TYPE:
+          return new KeyIndexFile(file, field, watermark, BloomFilter.read(buffer));
+        default:
+          throw new KeyIndexException(String.format("Unknown key index type %d in %s", type, file));
+      }
+    } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+      throw new KeyIndexException(String.format("Broken key index %s", file));
+    }
+  }
+
+  public static KeyFilter load(String path) {
+    return LOADED.computeIfAbsent(path, key -> open(new File(key)).getFilter());
+  }
+
+  public static void delete(String path) {
+    LOADED.remove(path);
+    if (!new File(path).delete()) {
+      throw new KeyIndexException(String.format("Failed to delete %s", path));
+    }
+  }
+
+  interface Writer {
+    void write(DataOutputStream output) throws IOException;
+  }
+}
@@ -0,0 +1,144 @@
+package org.embulk.output.kintone.index;
+
+import com.kintone.client.api.record.CreateCursorRequest;
+import com.kintone.client.api.record.GetRecordsByCursorResponseBody;
+import com.kintone.client.api.record.GetRecordsRequest;
+import com.kintone.client.model.record.Record;
+import java.lang.invoke.MethodHandles;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.embulk.output.kintone.KintoneClient;
+import org.embulk.output.kintone.KintoneColumnType;
+import org.embulk.output.kintone.PluginTask;
+import org.embulk.output.kintone.dispatcher.AsyncRecordClient;
+import org.embulk.output.kintone.dispatcher.AsyncRetry;
+import org.embulk.output.kintone.dispatcher.CircuitBreaker;
+import org.embulk.output.kintone.dispatcher.DomainGovernor;
+import org.embulk.output.kintone.dispatcher.RetryPolicies;
+import org.embulk.output.kintone.record.Id;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Streams the existing ids or update key values of the app into a key index. */
+public class KeyIndexPrefetcher {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final long CURSOR_SIZE = 500;
+  private static final double FALSE_POSITIVE_RATE = 0.01;
+
+  public static KeyIndex prefetch(PluginTask task, KintoneClient client) {
+    KeyIndexBuilder builder = KeyIndexBuilder.of(task.getUpdateKeyName().orElse(Id.FIELD));
+    fetch(task, client, "", builder::add);
+    KeyIndex index = builder.build();
+    LOGGER.info(
+        String.format("Prefetched %d keys of %s", index.size(), getFieldCode(task, client)));
+    return index;
+  }
+
+  public static BloomFilter bloom(PluginTask task, KintoneClient client) {
+    BloomFilter filter = BloomFilter.create(getTotalCount(task, client), FALSE_POSITIVE_RATE);
+    fetch(task, client, "", filter::add);
+    LOGGER.info(
+        String.format(
+            "Prefetched %d keys of %s into a Bloom filter",
+            filter.size(), getFieldCode(task, client)));
+    return filter;
+  }
+
+  /** Passes the keys of the records matching the query to the action, and returns their count. */
+  public static long fetch(
+      PluginTask task, KintoneClient client, String query, Consumer<Object> action) {
+    Function<Record, Object> toValue = valueOf(task, client);
+    return fetch(
+        task,
+        client,
+        query,
+        Collections.singletonList(getFieldCode(task, client)),
+        r -> action.accept(toValue.apply(r)));
+  }
+
+  /**
+   * Passes the records matching the query to the action, and returns their count. The cursor is
+   * read under the same retries, domain limits and circuit breaker as the tasks.
+   */
+  public static long fetch(
+      PluginTask task,
+      KintoneClient client,
+      String query,
+      List<String> fields,
+      Consumer<Record> action) {
+    CreateCursorRequest request =
+        new CreateCursorRequest()
+            .setApp((long) task.getAppId())
+            .setFields(fields)
+            .setQuery(query)
+            .setSize(CURSOR_SIZE);
+    AsyncRetry retry = newRetry(task);
+    try (AsyncRecordClient async = open(task, client)) {
+      String cursorId = AsyncRetry.join(retry.execute(() -> async.createCursor(request)));
+      long count = 0;
+      boolean hasNext = true;
+      try {
+        while (hasNext) {
+          GetRecordsByCursorResponseBody cursor =
+              AsyncRetry.join(retry.execute(() -> async.getRecordsByCursor(cursorId)));
+          cursor.getRecords().forEach(action);
+          count += cursor.getRecords().size();
+          hasNext = cursor.hasNext();
+        }
+      } finally {
+        if (hasNext) {
+          AsyncRetry.join(retry.execute(() -> async.deleteCursor(cursorId)));
+        }
+      }
+      return count;
+    }
+  }
+
+  private static AsyncRecordClient open(PluginTask task, KintoneClient client) {
+    DomainGovernor governor =
+        DomainGovernor.of(
+            task.getDomain(),
+            task.getMaxDomainConcurrency().orElse(null),
+            task.getMaxRequestsPerSecond().orElse(null));
+    CircuitBreaker breaker =
+        task.getCircuitBreaker()
+            .map(option -> CircuitBreaker.of(task.getDomain(), task.getAppId(), option))
+            .orElse(null);
+    return new AsyncRecordClient(client.record(), client.bulkRequests(), governor, breaker, 1);
+  }
+
+  /** Returns the function reading the id or update key value of a record. */
+  public static Function<Record, Object> valueOf(PluginTask task, KintoneClient client) {
+    String fieldCode = getFieldCode(task, client);
+    if (fieldCode.equals(Id.FIELD)) {
+      return Record::getId;
+    }
+    KintoneColumnType type = KintoneColumnType.valueOf(client.getFieldType(fieldCode).name());
+    return record -> type.getValue(record, fieldCode);
+  }
+
+  public static String getFieldCode(PluginTask task, KintoneClient client) {
+    String columnName = task.getUpdateKeyName().orElse(Id.FIELD);
+    return columnName.equals(Id.FIELD) ? Id.FIELD : client.getFieldCode(columnName);
+  }
+
+  public static long getTotalCount(PluginTask task, KintoneClient client) {
+    GetRecordsRequest request =
+        new GetRecordsRequest()
+            .setApp((long) task.getAppId())
+            .setFields(Collections.singletonList(Id.FIELD))
+            .setQuery("limit 1")
+            .setTotalCount(true);
+    AsyncRetry retry = newRetry(task);
+    try (AsyncRecordClient async = open(task, client)) {
+      return AsyncRetry.join(retry.execute(() -> async.getRecords(request))).getTotalCount();
+    }
+  }
+
+  private static AsyncRetry newRetry(PluginTask task) {
+    return new AsyncRetry(task.getRetryOptions(), new RetryPolicies(task.getRetryOptions()));
+  }
+}
@@ -0,0 +1,72 @@
+package org.embulk.output.kintone.index;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.embulk.output.kintone.record.Id;
+import org.embulk.output.kintone.util.LongHashSet;
+
+/** Keys collected while the task runs, matched in constant time per record. */
+public abstract class KeySet extends KeyIndex {
+  public static KeySet of(String field) {
+    return field.equals(Id.FIELD) ? new Ids() : new UpdateKeys();
+  }
+
+  public abstract void add(Object value);
+
+  private static class Ids extends KeySet {
+    private final LongHashSet ids = new LongHashSet();
+
+    @Override
+    public void add(Object value) {
+      Long id = toLong(value);
+      if (id != null) {
+        ids.add(id);
+      }
+    }
+
+    @Override
+    public boolean contains(Object value) {
+      Long id = toLong(value);
+      return id != null && ids.contains(id);
+    }
+
+    @Override
+    public int size() {
+      return ids.size();
+    }
+
+    @Override
+    public void forEach(Consumer<Object> action) {
+      ids.forEach(action::accept);
+    }
+  }
+
+  private static class UpdateKeys extends KeySet {
+    private final Set<String> values = new HashSet<>();
+
+    @Override
+    public void add(Object value) {
+      String normalized = normalize(value);
+      if (normalized != null) {
+        values.add(normalized);
+      }
+    }
+
+    @Override
+    public boolean contains(Object value) {
+      String normalized = normalize(value);
+      return normalized != null && values.contains(normalized);
+    }
+
+    @Override
+    public int size() {
+      return values.size();
+    }
+
+    @Override
+    public void forEach(Consumer<Object> action) {
+      values.forEach(action);
+    }
+  }
+}
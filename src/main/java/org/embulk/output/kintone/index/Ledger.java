@@ -0,0 +1,237 @@
+package org.embulk.output.kintone.index;
+
+import com.kintone.client.model.record.DateTimeFieldValue;
+import com.kintone.client.model.record.FieldValue;
+import com.kintone.client.model.record.NumberFieldValue;
+import com.kintone.client.model.record.Record;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import org.embulk.output.kintone.record.Id;
+import org.embulk.output.kintone.util.Hashes;
+
+/**
+ * Read-only map from the update keys to the hashes of the field values last written to them,
+ * stored as the sorted keys and their hashes in one file. The file is memory-mapped when loaded and
+ * shared by the tasks of the JVM like the key index files.
+ */
+public class Ledger {
+  private static final Map<String, Ledger> LOADED = new ConcurrentHashMap<>();
+  private final ByteBuffer data;
+  private final IntBuffer offsets;
+  private final LongBuffer hashes;
+  private final SortedStringIndex keys;
+
+  private Ledger(ByteBuffer data, IntBuffer offsets, LongBuffer hashes) {
+    this.data = data;
+    this.offsets = offsets;
+    this.hashes = hashes;
+    keys = new SortedStringIndex(data, offsets);
+  }
+
+  public static Ledger of(Map<String, Long> entries) {
+    List<byte[]> sorted = new ArrayList<>();
+    entries.keySet().forEach(key -> sorted.add(key.getBytes(StandardCharsets.UTF_8)));
+    sorted.sort(
+        (a, b) ->
+            SortedStringIndex.compare(
+                ByteBuffer.wrap(a), 0, a.length, ByteBuffer.wrap(b), 0, b.length));
+    Builder builder = new Builder(sorted.size());
+    sorted.forEach(key -> builder.add(key, entries.get(new String(key, StandardCharsets.UTF_8))));
+    return builder.build();
+  }
+
+  /**
+   * Merges the deltas following the first ledger into it. The tasks write in no particular order, so
+   * a key the deltas hold different hashes for is dropped rather than given either hash.
+   */
+  public static Ledger merge(List<Ledger> ledgers) {
+    int[] positions = new int[ledgers.size()];
+    Builder builder = new Builder(ledgers.stream().mapToInt(Ledger::size).max().orElse(0));
+    while (true) {
+      int min = -1;
+      for (int i = 0; i < ledgers.size(); i++) {
+        if (positions[i] < ledgers.get(i).size()
+            && (min < 0
+                || ledgers.get(i).compare(positions[i], ledgers.get(min), positions[min]) < 0)) {
+          min = i;
+        }
+      }
+      if (min < 0) {
+        return builder.build();
+      }
+      Ledger first = ledgers.get(min);
+      byte[] key = first.getKey(positions[min]);
+      long hash = 0;
+      Long written = null;
+      boolean conflicted = false;
+      for (int i = min; i < ledgers.size(); i++) {
+        if (positions[i] < ledgers.get(i).size()
+            && ledgers.get(i).compare(positions[i], first, positions[min]) == 0) {
+          hash = ledgers.get(i).hashes.get(positions[i]);
+          if (i > 0) {
+            conflicted |= written != null && written != hash;
+            written = hash;
+          }
+          if (i != min) {
+            positions[i]++;
+          }
+        }
+      }
+      positions[min]++;
+      if (!conflicted) {
+        builder.add(key, hash);
+      }
+    }
+  }
+
+  /** Returns the hash written to the key, or null if the key has never been written. */
+  public Long get(Object key) {
+    int index = keys.indexOf(key);
+    return index < 0 ? null : hashes.get(index);
+  }
+
+  public int size() {
+    return keys.size();
+  }
+
+  public void forEach(BiConsumer<String, Long> action) {
+    for (int i = 0; i < size(); i++) {
+      action.accept(new String(getKey(i), StandardCharsets.UTF_8), hashes.get(i));
+    }
+  }
+
+  public static Ledger load(String path) {
+    return LOADED.computeIfAbsent(path, key -> open(new File(key)));
+  }
+
+  public static Ledger open(File file) {
+    ByteBuffer buffer = KeyIndexFile.map(file);
+    try {
+      int size = buffer.getInt();
+      IntBuffer offsets = slice(buffer, (size + 1) * Integer.BYTES).asIntBuffer();
+      LongBuffer hashes = slice(buffer, size * Long.BYTES).asLongBuffer();
+      ByteBuffer data = slice(buffer, offsets.get(size));
+      return new Ledger(data, offsets, hashes);
+    } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+      throw new KeyIndexException(String.format("Broken ledger %s", file));
+    }
+  }
+
+  public void write(File file) {
+    KeyIndexFile.replace(
+        file,
+        output -> {
+          output.writeInt(size());
+          for (int i = 0; i <= size(); i++) {
+            output.writeInt(offsets.get(i));
+          }
+          for (int i = 0; i < size(); i++) {
+            output.writeLong(hashes.get(i));
+          }
+          for (int i = 0; i < offsets.get(size()); i++) {
+            output.write(data.get(i));
+          }
+        });
+    LOADED.remove(file.getPath());
+  }
+
+  /**
+   * Returns the hash of the field values of the record except the update key and the id, so that
+   * the same values converted again hash the same whatever the scale of the numbers or the zone of
+   * the date times.
+   */
+  public static long hash(Record record, String keyFieldCode) {
+    StringBuilder builder = new StringBuilder();
+    for (String fieldCode : new TreeSet<>(record.getFieldCodes(true))) {
+      if (fieldCode.equals(keyFieldCode) || fieldCode.equals(Id.FIELD)) {
+        continue;
+      }
+      builder
+          .append(fieldCode)
+          .append('\0')
+          .append(toString(record.getFieldValue(fieldCode)))
+          .append('\0');
+    }
+    return Hashes.hash(builder.toString());
+  }
+
+  private static String toString(FieldValue value) {
+    if (value instanceof NumberFieldValue) {
+      BigDecimal number = ((NumberFieldValue) value).getValue();
+      return number == null ? "" : number.stripTrailingZeros().toPlainString();
+    }
+    if (value instanceof DateTimeFieldValue) {
+      ZonedDateTime dateTime = ((DateTimeFieldValue) value).getValue();
+      return dateTime == null ? "" : dateTime.toInstant().toString();
+    }
+    return String.valueOf(value);
+  }
+
+  private byte[] getKey(int index) {
+    byte[] key = new byte[offsets.get(index + 1) - offsets.get(index)];
+    for (int i = 0; i < key.length; i++) {
+      key[i] = data.get(offsets.get(index) + i);
+    }
+    return key;
+  }
+
+  private int compare(int index, Ledger other, int otherIndex) {
+    return SortedStringIndex.compare(
+        data,
+        offsets.get(index),
+        offsets.get(index + 1),
+        other.data,
+        other.offsets.get(otherIndex),
+        other.offsets.get(otherIndex + 1));
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int length) {
+    ByteBuffer slice = buffer.slice();
+    slice.limit(length);
+    buffer.position(buffer.position() + length);
+    return slice;
+  }
+
+  private static class Builder {
+    private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    private int[] offsets;
+    private long[] hashes;
+    private int size;
+
+    private Builder(int capacity) {
+      offsets = new int[capacity + 1];
+      hashes = new long[Math.max(capacity, 1)];
+    }
+
+    private void add(byte[] key, long hash) {
+      if (size == hashes.length) {
+        hashes = Arrays.copyOf(hashes, size * 2);
+        offsets = Arrays.copyOf(offsets, size * 2 + 1);
+      }
+      data.write(key, 0, key.length);
+      hashes[size++] = hash;
+      offsets[size] = data.size();
+    }
+
+    private Ledger build() {
+      return new Ledger(
+          ByteBuffer.wrap(data.toByteArray()),
+          IntBuffer.wrap(offsets, 0, size + 1).slice(),
+          LongBuffer.wrap(hashes, 0, size).slice());
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package org.embulk.output.kintone.index;
+
+import java.io.File;
+import java.lang.invoke.MethodHandles;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.embulk.config.ConfigException;
+import org.embulk.output.kintone.KintoneClient;
+import org.embulk.output.kintone.PluginTask;
+import org.embulk.output.kintone.record.Id;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Key index kept in a directory between runs. At transaction start it is refreshed with the records
+ * updated since the saved watermark and the keys the tasks of the previous runs inserted, and it is
+ * rebuilt from scratch when it is missing, unreadable or holds more keys than the app has records,
+ * that is when records were deleted or their update keys changed.
+ */
+public class PersistentKeyIndex {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  // Covers the clock difference to kintone and the records updated while fetching
+  private static final long WATERMARK_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  private static final String DELTA_SUFFIX = ".delta";
+
+  public static String refresh(PluginTask task, KintoneClient client) {
+    File file = getFile(task, client);
+    String fieldCode = KeyIndexPrefetcher.getFieldCode(task, client);
+    long watermark = System.currentTimeMillis() - WATERMARK_MARGIN_MILLIS;
+    KeyIndexFile saved = open(file, fieldCode);
+    List<File> deltas = getDeltas(file);
+    KeyIndex index = null;
+    if (saved != null) {
+      KeyIndexBuilder builder = KeyIndexBuilder.of(task.getUpdateKeyName().orElse(Id.FIELD));
+      saved.getIndex().forEach(builder::add);
+      deltas.forEach(delta -> KeyIndexFile.open(delta).getIndex().forEach(builder::add));
+      String query =
+          String.format(
+              "%s > \"%s\"",
+              client.getUpdatedTimeFieldCode(),
+              Instant.ofEpochSecond(TimeUnit.MILLISECONDS.toSeconds(saved.getWatermark())));
+      long updated = KeyIndexPrefetcher.fetch(task, client, query, builder::add);
+      index = builder.build();
+      long total = KeyIndexPrefetcher.getTotalCount(task, client);
+      if (fieldCode.equals(Id.FIELD) ? index.size() != total : index.size() > total) {
+        LOGGER.info(
+            String.format(
+                "Rebuilding %s because it has %d keys for %d records", file, index.size(), total));
+        index = null;
+      } else {
+        LOGGER.info(
+            String.format(
+                "Refreshed %s with %d updated records and %d deltas to %d keys",
+                file, updated, deltas.size(), index.size()));
+      }
+    }
+    if (index == null) {
+      index = KeyIndexPrefetcher.prefetch(task, client);
+    }
+    KeyIndexFile.write(file, fieldCode, watermark, index);
+    deltas.forEach(File::delete);
+    return file.getPath();
+  }
+
+  /** Saves the keys a task inserted, to be merged into the index at the end of the transaction. */
+  public static void writeDelta(String path, KeyIndex keys) {
+    File file = new File(path);
+    KeyIndexFile.write(
+        new File(file.getParentFile(), file.getName() + "." + UUID.randomUUID() + DELTA_SUFFIX),
+        "",
+        0,
+        keys);
+  }
+
+  public static void merge(String path) {
+    File file = new File(path);
+    List<File> deltas = getDeltas(file);
+    if (deltas.isEmpty()) {
+      return;
+    }
+    KeyIndexFile saved = KeyIndexFile.open(file);
+    KeyIndexBuilder builder = KeyIndexBuilder.of(saved.getField());
+    saved.getIndex().forEach(builder::add);
+    deltas.forEach(delta -> KeyIndexFile.open(delta).getIndex().forEach(builder::add));
+    KeyIndex index = builder.build();
+    KeyIndexFile.write(file, saved.getField(), saved.getWatermark(), index);
+    deltas.forEach(File::delete);
+    LOGGER.info(
+        String.format("Merged %d deltas into %s of %d keys", deltas.size(), file, index.size()));
+  }
+
+  private static File getFile(PluginTask task, KintoneClient client) {
+    if (!task.getUpsertKeyIndexDirectory().isPresent()) {
+      throw new ConfigException(
+          "upsert_key_index_directory must be configured when upsert_key_index is persistent.");
+    }
+    File directory = new File(task.getUpsertKeyIndexDirectory().get());
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new ConfigException(String.format("Failed to create %s", directory));
+    }
+    String fieldCode = KeyIndexPrefetcher.getFieldCode(task, client);
+    return new File(
+        directory,
+        String.format(
+            "%s-%d-%08x.index", task.getDomain(), task.getAppId(), fieldCode.hashCode()));
+  }
+
+  private static KeyIndexFile open(File file, String fieldCode) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      KeyIndexFile saved = KeyIndexFile.open(file);
+      return saved.getField().equals(fieldCode) && saved.getFilter().isExact() ? saved : null;
+    } catch (KeyIndexException e) {
+      LOGGER.warn(String.format("Rebuilding %s because it is unreadable", file), e);
+      return null;
+    }
+  }
+
+  private static List<File> getDeltas(File file) {
+    File[] deltas =
+        file.getAbsoluteFile()
+            .getParentFile()
+            .listFiles(
+                (directory, name) ->
+                    name.startsWith(file.getName() + ".") && name.endsWith(DELTA_SUFFIX));
+    return deltas == null ? Collections.emptyList() : Arrays.asList(deltas);
+  }
+}
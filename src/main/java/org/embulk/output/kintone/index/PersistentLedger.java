@@ -0,0 +1,126 @@
+package org.embulk.output.kintone.index;
+
+import com.kintone.client.model.record.Record;
+import java.io.File;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import org.embulk.config.ConfigException;
+import org.embulk.output.kintone.KintoneClient;
+import org.embulk.output.kintone.PluginTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ledger kept in a directory between runs. The tasks save the hashes of the records they wrote into
+ * deltas, which are merged into the ledger at the end of the transaction, and the ledger is rebuilt
+ * from the records of the app on request, when they may have been changed outside of this plugin.
+ */
+public class PersistentLedger {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final String DELTA_SUFFIX = ".delta";
+
+  public static String prepare(PluginTask task, KintoneClient client) {
+    File file = getFile(task, client);
+    if (task.getLedgerRebuild()) {
+      rebuild(task, client, file);
+    } else if (open(file) == null) {
+      Ledger.of(Collections.emptyMap()).write(file);
+    }
+    merge(file.getPath());
+    return file.getPath();
+  }
+
+  /** Saves the hashes of the records a task wrote, to be merged at the end of the transaction. */
+  public static void writeDelta(String path, Map<String, Long> hashes) {
+    if (hashes.isEmpty()) {
+      return;
+    }
+    File file = new File(path);
+    Ledger.of(hashes)
+        .write(
+            new File(
+                file.getParentFile(), file.getName() + "." + UUID.randomUUID() + DELTA_SUFFIX));
+  }
+
+  public static void merge(String path) {
+    File file = new File(path);
+    List<File> deltas = getDeltas(file);
+    if (deltas.isEmpty()) {
+      return;
+    }
+    List<Ledger> ledgers = new ArrayList<>();
+    ledgers.add(Ledger.open(file));
+    deltas.forEach(delta -> ledgers.add(Ledger.open(delta)));
+    Ledger ledger = Ledger.merge(ledgers);
+    ledger.write(file);
+    deltas.forEach(File::delete);
+    LOGGER.info(
+        String.format("Merged %d deltas into %s of %d keys", deltas.size(), file, ledger.size()));
+  }
+
+  private static void rebuild(PluginTask task, KintoneClient client, File file) {
+    String fieldCode = KeyIndexPrefetcher.getFieldCode(task, client);
+    Function<Record, Object> toValue = KeyIndexPrefetcher.valueOf(task, client);
+    List<String> fields = new ArrayList<>(task.getFieldTypes().keySet());
+    if (!fields.contains(fieldCode)) {
+      fields.add(fieldCode);
+    }
+    Map<String, Long> hashes = new HashMap<>();
+    KeyIndexPrefetcher.fetch(
+        task,
+        client,
+        "",
+        fields,
+        record -> {
+          String key = KeyIndex.normalize(toValue.apply(record));
+          if (key != null) {
+            hashes.put(key, Ledger.hash(record, fieldCode));
+          }
+        });
+    Ledger.of(hashes).write(file);
+    getDeltas(file).forEach(File::delete);
+    LOGGER.info(String.format("Rebuilt %s with %d keys", file, hashes.size()));
+  }
+
+  private static File getFile(PluginTask task, KintoneClient client) {
+    File directory = new File(task.getLedgerDirectory().get());
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new ConfigException(String.format("Failed to create %s", directory));
+    }
+    String fieldCode = KeyIndexPrefetcher.getFieldCode(task, client);
+    return new File(
+        directory,
+        String.format(
+            "%s-%d-%08x.ledger", task.getDomain(), task.getAppId(), fieldCode.hashCode()));
+  }
+
+  private static Ledger open(File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      return Ledger.open(file);
+    } catch (KeyIndexException e) {
+      LOGGER.warn(String.format("Starting %s over because it is unreadable", file), e);
+      return null;
+    }
+  }
+
+  private static List<File> getDeltas(File file) {
+    File[] deltas =
+        file.getAbsoluteFile()
+            .getParentFile()
+            .listFiles(
+                (directory, name) ->
+                    name.startsWith(file.getName() + ".") && name.endsWith(DELTA_SUFFIX));
+    return deltas == null ? Collections.emptyList() : Arrays.asList(deltas);
+  }
+}
@@ -0,0 +1,66 @@
+package org.embulk.output.kintone.index;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.function.Consumer;
+
+/** Read-only index of ids kept as a sorted array, on the heap or mapped from a file. */
+public class SortedLongIndex extends KeyIndex {
+  static final byte TYPE = 0;
+  private final LongBuffer ids;
+
+  SortedLongIndex(LongBuffer ids) {
+    this.ids = ids;
+  }
+
+  @Override
+  public boolean contains(Object value) {
+    Long id = toLong(value);
+    if (id == null) {
+      return false;
+    }
+    int low = 0;
+    int high = size() - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int compared = Long.compare(ids.get(middle), id);
+      if (compared < 0) {
+        low = middle + 1;
+      } else if (compared > 0) {
+        high = middle - 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public int size() {
+    return ids.limit();
+  }
+
+  @Override
+  public void forEach(Consumer<Object> action) {
+    for (int i = 0; i < size(); i++) {
+      action.accept(ids.get(i));
+    }
+  }
+
+  void write(DataOutputStream output) throws IOException {
+    output.writeByte(TYPE);
+    output.writeInt(size());
+    for (int i = 0; i < size(); i++) {
+      output.writeLong(ids.get(i));
+    }
+  }
+
+  static SortedLongIndex read(ByteBuffer buffer) {
+    int size = buffer.getInt();
+    ByteBuffer body = buffer.slice();
+    body.limit(size * Long.BYTES);
+    return new SortedLongIndex(body.asLongBuffer());
+  }
+}
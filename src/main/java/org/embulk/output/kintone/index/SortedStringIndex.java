@@ -0,0 +1,101 @@
+package org.embulk.output.kintone.index;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Read-only index of update keys, dictionary encoded as the sorted UTF-8 bytes of every key in one
+ * buffer, so that millions of keys do not cost a String object each.
+ */
+public class SortedStringIndex extends KeyIndex {
+  static final byte TYPE = 1;
+  private final ByteBuffer data;
+  private final IntBuffer offsets;
+
+  SortedStringIndex(ByteBuffer data, IntBuffer offsets) {
+    this.data = data;
+    this.offsets = offsets;
+  }
+
+  @Override
+  public boolean contains(Object value) {
+    return indexOf(value) >= 0;
+  }
+
+  /** Returns the position of the key in the sorted keys, or a negative value if absent. */
+  int indexOf(Object value) {
+    String normalized = normalize(value);
+    if (normalized == null) {
+      return -1;
+    }
+    ByteBuffer key = ByteBuffer.wrap(normalized.getBytes(StandardCharsets.UTF_8));
+    int low = 0;
+    int high = size() - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int compared =
+          compare(data, offsets.get(middle), offsets.get(middle + 1), key, 0, key.limit());
+      if (compared < 0) {
+        low = middle + 1;
+      } else if (compared > 0) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public int size() {
+    return offsets.limit() - 1;
+  }
+
+  @Override
+  public void forEach(Consumer<Object> action) {
+    for (int i = 0; i < size(); i++) {
+      byte[] key = new byte[offsets.get(i + 1) - offsets.get(i)];
+      for (int j = 0; j < key.length; j++) {
+        key[j] = data.get(offsets.get(i) + j);
+      }
+      action.accept(new String(key, StandardCharsets.UTF_8));
+    }
+  }
+
+  void write(DataOutputStream output) throws IOException {
+    output.writeByte(TYPE);
+    output.writeInt(size());
+    for (int i = 0; i <= size(); i++) {
+      output.writeInt(offsets.get(i));
+    }
+    for (int i = 0; i < offsets.get(size()); i++) {
+      output.writeByte(data.get(i));
+    }
+  }
+
+  static SortedStringIndex read(ByteBuffer buffer) {
+    int size = buffer.getInt();
+    ByteBuffer body = buffer.slice();
+    body.limit((size + 1) * Integer.BYTES);
+    IntBuffer offsets = body.asIntBuffer();
+    buffer.position(buffer.position() + body.limit());
+    ByteBuffer data = buffer.slice();
+    data.limit(offsets.get(size));
+    return new SortedStringIndex(data, offsets);
+  }
+
+  static int compare(ByteBuffer a, int aFrom, int aTo, ByteBuffer b, int bFrom, int bTo) {
+    int length = Math.min(aTo - aFrom, bTo - bFrom);
+    for (int i = 0; i < length; i++) {
+      int compared = Integer.compare(a.get(aFrom + i) & 0xff, b.get(bFrom + i) & 0xff);
+      if (compared != 0) {
+        return compared;
+      }
+    }
+    return Integer.compare(aTo - aFrom, bTo - bFrom);
+  }
+}
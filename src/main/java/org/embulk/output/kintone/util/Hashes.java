@@ -0,0 +1,20 @@
+package org.embulk.output.kintone.util;
+
+import java.nio.charset.StandardCharsets;
+
+public class Hashes {
+  /** Returns the 64 bit FNV-1a hash of the UTF-8 bytes, mixed by the MurmurHash3 finalizer. */
+  public static long hash(String value) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
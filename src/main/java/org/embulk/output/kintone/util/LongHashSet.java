@@ -0,0 +1,90 @@
+package org.embulk.output.kintone.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/** Open addressing hash set of primitive longs, avoiding a boxed Long per element. */
+public class LongHashSet {
+  private static final long EMPTY = 0;
+  private long[] table;
+  private int mask;
+  private int size;
+  private boolean containsEmpty;
+
+  public LongHashSet() {
+    this(16);
+  }
+
+  public LongHashSet(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+    table = new long[capacity];
+    mask = capacity - 1;
+  }
+
+  public boolean add(long value) {
+    if (value == EMPTY) {
+      boolean added = !containsEmpty;
+      containsEmpty = true;
+      return added;
+    }
+    int index = index(value);
+    while (table[index] != EMPTY) {
+      if (table[index] == value) {
+        return false;
+      }
+      index = (index + 1) & mask;
+    }
+    table[index] = value;
+    if (++size * 2 > table.length) {
+      grow();
+    }
+    return true;
+  }
+
+  public boolean contains(long value) {
+    if (value == EMPTY) {
+      return containsEmpty;
+    }
+    int index = index(value);
+    while (table[index] != EMPTY) {
+      if (table[index] == value) {
+        return true;
+      }
+      index = (index + 1) & mask;
+    }
+    return false;
+  }
+
+  public int size() {
+    return containsEmpty ? size + 1 : size;
+  }
+
+  public void forEach(LongConsumer action) {
+    if (containsEmpty) {
+      action.accept(EMPTY);
+    }
+    for (long value : table) {
+      if (value != EMPTY) {
+        action.accept(value);
+      }
+    }
+  }
+
+  private void grow() {
+    long[] values = Arrays.stream(table).filter(value -> value != EMPTY).toArray();
+    table = new long[table.length * 2];
+    mask = table.length - 1;
+    for (long value : values) {
+      int index = index(value);
+      while (table[index] != EMPTY) {
+        index = (index + 1) & mask;
+      }
+      table[index] = value;
+    }
+  }
+
+  private int index(long value) {
+    long hash = value * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+}
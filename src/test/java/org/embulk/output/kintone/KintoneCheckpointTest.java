@@ -0,0 +1,69 @@
+package org.embulk.output.kintone;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import org.junit.Test;
+
+public class KintoneCheckpointTest {
+  @Test
+  public void save() throws IOException {
+    File directory = Files.createTempDirectory("checkpoint").toFile();
+    PluginTask task = task(directory, "a");
+    assertThat(KintoneCheckpoint.open(task, 0).getCommitted(), is(0L));
+    KintoneCheckpoint.open(task, 0).save(100);
+    KintoneCheckpoint.open(task, 0).save(200);
+    assertThat(KintoneCheckpoint.open(task, 0).getCommitted(), is(200L));
+    assertThat(KintoneCheckpoint.open(task, 1).getCommitted(), is(0L));
+    KintoneCheckpoint.open(task(directory, "b"), 0).save(300);
+    KintoneCheckpoint.delete(task);
+    assertThat(KintoneCheckpoint.open(task, 0).getCommitted(), is(0L));
+    assertThat(KintoneCheckpoint.open(task(directory, "b"), 0).getCommitted(), is(300L));
+  }
+
+  @Test
+  public void resume() throws IOException {
+    File directory = Files.createTempDirectory("checkpoint").toFile();
+    PluginTask task = task(directory, "a");
+    // The first attempt fails after kintone added some records beyond its last checkpoint
+    KintoneCheckpoint first = KintoneCheckpoint.open(task, 0);
+    first.save(100);
+    first.add(Arrays.asList(100L, 101L));
+    first.add(Collections.singletonList(103L));
+    KintoneCheckpoint second = KintoneCheckpoint.open(task, 0);
+    assertThat(second.getCommitted(), is(100L));
+    assertThat(second.isCommitted(99), is(true));
+    assertThat(second.isCommitted(101), is(true));
+    assertThat(second.isCommitted(102), is(false));
+    assertThat(second.isCommitted(103), is(true));
+    assertThat(second.isCommitted(104), is(false));
+    // The second attempt fails too, after a checkpoint below a record the first attempt added
+    second.add(Collections.singletonList(102L));
+    second.save(103);
+    second.add(Collections.singletonList(104L));
+    KintoneCheckpoint third = KintoneCheckpoint.open(task, 0);
+    assertThat(third.isCommitted(102), is(true));
+    assertThat(third.isCommitted(103), is(true));
+    assertThat(third.isCommitted(104), is(true));
+    assertThat(third.isCommitted(105), is(false));
+    third.save(105);
+    assertThat(new File(directory, "example.com-1-a-0.added").exists(), is(false));
+  }
+
+  private static PluginTask task(File directory, String checkpointId) {
+    PluginTask task = mock(PluginTask.class);
+    when(task.getDomain()).thenReturn("example.com");
+    when(task.getAppId()).thenReturn(1);
+    when(task.getCheckpointDirectory()).thenReturn(Optional.of(directory.getPath()));
+    when(task.getCheckpointId()).thenReturn(Optional.of(checkpointId));
+    return task;
+  }
+}
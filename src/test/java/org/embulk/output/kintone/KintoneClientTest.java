@@ -4,7 +4,9 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThrows;
 
+import com.kintone.client.model.record.FieldType;
 import java.util.Collections;
+import java.util.Map;
 import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
 import org.embulk.output.kintone.util.Lazy;
@@ -85,6 +87,34 @@ public class KintoneClientTest extends TestKintoneOutputPlugin {
     assertConfigException("The id column must be 'long'.", id(Types.STRING));
   }
 
+  @Test
+  public void testShared() {
+    merge(config("mode: insert"));
+    merge(config("update_key: null"));
+    runWithMockClient(
+        client -> {
+          try (Lazy<KintoneClient> other = KintoneClient.lazy(this::task, schema(builder()))) {
+            assertThat(other.get().record() == client.get().record(), is(true));
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+          assertThat(client.get().getFieldType("long_number") != null, is(true));
+        });
+  }
+
+  @Test
+  public void testFieldTypes() {
+    merge(config("mode: update"));
+    merge(config("update_key: long_number"));
+    runWithMockClient(
+        client -> {
+          Map<String, FieldType> fieldTypes = client.get().getFieldTypes();
+          assertThat(fieldTypes.get("long_number"), is(FieldType.NUMBER));
+          assertThat(fieldTypes.get("string_single_line_text"), is(FieldType.SINGLE_LINE_TEXT));
+          assertThat(fieldTypes.containsKey("non_existing_field"), is(false));
+        });
+  }
+
   private void assertConfigException(String message) {
     assertConfigException(message, builder());
   }
@@ -0,0 +1,41 @@
+package org.embulk.output.kintone;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import com.kintone.client.model.record.NumberFieldValue;
+import com.kintone.client.model.record.Record;
+import com.kintone.client.model.record.SingleLineTextFieldValue;
+import java.math.BigDecimal;
+import org.junit.Test;
+
+public class KintoneCoalesceTest {
+  @Test
+  public void last() {
+    Record older = new Record().putField("a", new SingleLineTextFieldValue("older"));
+    Record newer = new Record().putField("b", new NumberFieldValue(BigDecimal.ONE));
+    assertThat(KintoneCoalesce.LAST.merge(older, newer) == newer, is(true));
+  }
+
+  @Test
+  public void merge() {
+    Record older =
+        new Record()
+            .putField("a", new SingleLineTextFieldValue("older"))
+            .putField("b", new NumberFieldValue(BigDecimal.ONE));
+    Record newer =
+        new Record()
+            .putField("b", new NumberFieldValue(BigDecimal.TEN))
+            .putField("c", new SingleLineTextFieldValue("newer"));
+    Record merged = KintoneCoalesce.MERGE.merge(older, newer);
+    assertThat(merged.getFieldCodes(true).size(), is(3));
+    assertThat(merged.getSingleLineTextFieldValue("a"), is("older"));
+    assertThat(merged.getNumberFieldValue("b"), is(BigDecimal.TEN));
+    assertThat(merged.getSingleLineTextFieldValue("c"), is("newer"));
+  }
+
+  @Test
+  public void of() {
+    assertThat(KintoneCoalesce.of("merge"), is(KintoneCoalesce.MERGE));
+  }
+}
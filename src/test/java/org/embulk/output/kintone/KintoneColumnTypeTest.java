@@ -182,6 +182,38 @@ public class KintoneColumnTypeTest {
     return Arrays.asList(a);
   }
 
+  @Test
+  public void testIsSame() {
+    assertThat(
+        NUMBER.isSame(
+            new NumberFieldValue(new BigDecimal("1.0")), new NumberFieldValue(BigDecimal.ONE)),
+        is(true));
+    assertThat(
+        NUMBER.isSame(new NumberFieldValue(null), new NumberFieldValue(BigDecimal.ONE)),
+        is(false));
+    assertThat(NUMBER.isSame(new NumberFieldValue(null), new NumberFieldValue(null)), is(true));
+    assertThat(
+        DATETIME.isSame(
+            new DateTimeFieldValue(dateTime("1970-01-01T09:00:00+09:00")),
+            new DateTimeFieldValue(dateTime("1970-01-01T00:00:00Z"))),
+        is(true));
+    assertThat(
+        DATETIME.isSame(
+            new DateTimeFieldValue(dateTime("1970-01-01T00:00:01Z")),
+            new DateTimeFieldValue(dateTime("1970-01-01T00:00:00Z"))),
+        is(false));
+    assertThat(
+        SINGLE_LINE_TEXT.isSame(
+            new SingleLineTextFieldValue("a"), new SingleLineTextFieldValue("a")),
+        is(true));
+    assertThat(SINGLE_LINE_TEXT.isSame(new SingleLineTextFieldValue("a"), null), is(false));
+    assertThat(
+        CHECK_BOX.isSame(
+            new CheckBoxFieldValue(Arrays.asList("a", "b")),
+            new CheckBoxFieldValue(Arrays.asList("a"))),
+        is(false));
+  }
+
   public static List<TableRow> rows(Long... ids) {
     return Arrays.stream(ids).map(DeserializerTest::tableRow).collect(Collectors.toList());
   }
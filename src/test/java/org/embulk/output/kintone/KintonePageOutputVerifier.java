@@ -19,6 +19,7 @@ import com.kintone.client.model.record.SingleLineTextFieldValue;
 import com.kintone.client.model.record.SubtableFieldValue;
 import com.kintone.client.model.record.UpdateKey;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -45,6 +46,9 @@ public class KintonePageOutputVerifier implements TransactionalPageOutput {
   private final List<String> addValues;
   private final List<Record> addRecords;
   private final List<RecordForUpdate> updateRecords;
+  private final List<Long> deleteIds;
+  private final List<Record> existingRecords;
+  private final List<Page> pages = new ArrayList<>();
 
   public KintonePageOutputVerifier(
       String domain,
@@ -52,8 +56,19 @@ public class KintonePageOutputVerifier implements TransactionalPageOutput {
       List<String> values,
       List<String> addValues,
       List<Record> addRecords,
-      List<RecordForUpdate> updateRecords) {
-    this(null, domain, field, values, addValues, addRecords, updateRecords);
+      List<RecordForUpdate> updateRecords,
+      List<Long> deleteIds,
+      List<Record> existingRecords) {
+    this(
+        null,
+        domain,
+        field,
+        values,
+        addValues,
+        addRecords,
+        updateRecords,
+        deleteIds,
+        existingRecords);
   }
 
   public KintonePageOutputVerifier(
@@ -63,7 +78,9 @@ public class KintonePageOutputVerifier implements TransactionalPageOutput {
       List<String> values,
       List<String> addValues,
       List<Record> addRecords,
-      List<RecordForUpdate> updateRecords) {
+      List<RecordForUpdate> updateRecords,
+      List<Long> deleteIds,
+      List<Record> existingRecords) {
     this.transactionalPageOutput = transactionalPageOutput;
     this.domain = domain;
     this.field = field;
@@ -71,16 +88,26 @@ public class KintonePageOutputVerifier implements TransactionalPageOutput {
     this.addValues = addValues;
     this.addRecords = addRecords;
     this.updateRecords = updateRecords;
+    this.deleteIds = deleteIds;
+    this.existingRecords = existingRecords;
   }
 
   @Override
   public void add(Page page) {
-    runWithMock(() -> transactionalPageOutput.add(page));
+    pages.add(page);
   }
 
   @Override
   public void finish() {
-    transactionalPageOutput.finish();
+    if (pages.isEmpty()) {
+      transactionalPageOutput.finish();
+      return;
+    }
+    runWithMock(
+        () -> {
+          pages.forEach(transactionalPageOutput::add);
+          transactionalPageOutput.finish();
+        });
   }
 
   @Override
@@ -142,10 +169,11 @@ public class KintonePageOutputVerifier implements TransactionalPageOutput {
             .flatMap(Collection::stream)
             .collect(Collectors.toList()),
         updateRecords);
+    assertThat(domain, mockClient.getDeletedIds(), is(deleteIds));
   }
 
   private List<String> getValues() {
-    if (values.isEmpty() || updateRecords.isEmpty()) {
+    if (values.isEmpty() || updateRecords.isEmpty() || !existingRecords.isEmpty()) {
       return values;
     }
     Function<FieldValue, StringValue> toValue =
@@ -164,6 +192,9 @@ public class KintonePageOutputVerifier implements TransactionalPageOutput {
   }
 
   private List<Record> getRecords() {
+    if (!existingRecords.isEmpty()) {
+      return existingRecords;
+    }
     return updateRecords.stream().map(this::getRecord).collect(Collectors.toList());
   }
 
@@ -189,7 +220,8 @@ public class KintonePageOutputVerifier implements TransactionalPageOutput {
   }
 
   private List<String> getFields() {
-    return Collections.singletonList(field);
+    // The fields read with the existing records depend on the mode
+    return existingRecords.isEmpty() ? Collections.singletonList(field) : null;
   }
 
   private String getQuery() {
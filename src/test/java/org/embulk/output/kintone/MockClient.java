@@ -1,16 +1,22 @@
 package org.embulk.output.kintone;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.matches;
+import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.kintone.client.AppClient;
+import com.kintone.client.BulkRequestClient;
 import com.kintone.client.KintoneClient;
 import com.kintone.client.KintoneClientBuilder;
 import com.kintone.client.RecordClient;
+import com.kintone.client.api.record.CreateCursorRequest;
+import com.kintone.client.api.record.CreateCursorResponseBody;
 import com.kintone.client.api.record.GetRecordsByCursorResponseBody;
 import com.kintone.client.model.app.field.CheckBoxFieldProperty;
 import com.kintone.client.model.app.field.DateFieldProperty;
@@ -31,30 +37,57 @@ import com.kintone.client.model.app.field.SubtableFieldProperty;
 import com.kintone.client.model.app.field.TimeFieldProperty;
 import com.kintone.client.model.app.field.UserSelectFieldProperty;
 import com.kintone.client.model.record.Record;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import org.mockito.ArgumentCaptor;
 import org.mockito.MockedStatic;
 
 public class MockClient {
   private final String domain;
-  private final List<Record> records;
-  private final List<String> fields;
-  private final String query;
   private final RecordClient mockRecordClient;
+  private final BulkRequestClient mockBulkRequestClient;
 
   public MockClient(String domain, List<Record> records, List<String> fields, String query) {
     this.domain = domain;
-    this.records = records;
-    this.fields = fields;
-    this.query = query;
     mockRecordClient = mock(RecordClient.class);
+    // Stubbed up front, so that the tests can stub the record client over them before running
+    GetRecordsByCursorResponseBody mockGetRecordsByCursorResponseBody =
+        mock(GetRecordsByCursorResponseBody.class);
+    when(mockGetRecordsByCursorResponseBody.getRecords()).thenReturn(records);
+    when(mockGetRecordsByCursorResponseBody.hasNext()).thenReturn(false);
+    when(mockRecordClient.createCursor(eq(0L), fields == null ? anyList() : eq(fields), eq(query)))
+        .thenReturn("id");
+    CreateCursorResponseBody mockCreateCursorResponseBody = mock(CreateCursorResponseBody.class);
+    when(mockCreateCursorResponseBody.getId()).thenReturn("id");
+    when(mockRecordClient.createCursor(any(CreateCursorRequest.class)))
+        .thenReturn(mockCreateCursorResponseBody);
+    when(mockRecordClient.getRecordsByCursor(eq("id")))
+        .thenReturn(mockGetRecordsByCursorResponseBody);
+    when(mockRecordClient.addRecords(eq(0L), anyList())).thenReturn(Collections.emptyList());
+    when(mockRecordClient.updateRecords(eq(0L), anyList())).thenReturn(Collections.emptyList());
+    mockBulkRequestClient = mock(BulkRequestClient.class);
   }
 
   public RecordClient getMockRecordClient() {
     return mockRecordClient;
   }
 
+  public BulkRequestClient getMockBulkRequestClient() {
+    return mockBulkRequestClient;
+  }
+
+  public List<Long> getDeletedIds() {
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<Long>> captor = ArgumentCaptor.forClass(List.class);
+    verify(mockRecordClient, atLeast(0)).deleteRecords(eq(0L), captor.capture());
+    return captor.getAllValues().stream()
+        .flatMap(Collection::stream)
+        .collect(Collectors.toList());
+  }
+
   public void run(Runnable runnable) throws Exception {
     @SuppressWarnings("unchecked")
     Map<String, FieldProperty> mockFormFields = mock(Map.class);
@@ -83,18 +116,10 @@ public class MockClient {
     when(mockFormFields.get(matches("^.*_subtable$"))).thenReturn(new SubtableFieldProperty());
     AppClient mockAppClient = mock(AppClient.class);
     when(mockAppClient.getFormFields(eq(0L))).thenReturn(mockFormFields);
-    GetRecordsByCursorResponseBody mockGetRecordsByCursorResponseBody =
-        mock(GetRecordsByCursorResponseBody.class);
-    when(mockGetRecordsByCursorResponseBody.getRecords()).thenReturn(records);
-    when(mockGetRecordsByCursorResponseBody.hasNext()).thenReturn(false);
-    when(mockRecordClient.createCursor(eq(0L), eq(fields), eq(query))).thenReturn("id");
-    when(mockRecordClient.getRecordsByCursor(eq("id")))
-        .thenReturn(mockGetRecordsByCursorResponseBody);
-    when(mockRecordClient.addRecords(eq(0L), anyList())).thenReturn(Collections.emptyList());
-    when(mockRecordClient.updateRecords(eq(0L), anyList())).thenReturn(Collections.emptyList());
     com.kintone.client.KintoneClient mockKintoneClient = mock(KintoneClient.class);
     when(mockKintoneClient.app()).thenReturn(mockAppClient);
     when(mockKintoneClient.record()).thenReturn(mockRecordClient);
+    when(mockKintoneClient.bulkRequests()).thenReturn(mockBulkRequestClient);
     KintoneClientBuilder mockKintoneClientBuilder = mock(KintoneClientBuilder.class);
     when(mockKintoneClientBuilder.authByApiToken(eq("token"))).thenReturn(mockKintoneClientBuilder);
     when(mockKintoneClientBuilder.build()).thenReturn(mockKintoneClient);
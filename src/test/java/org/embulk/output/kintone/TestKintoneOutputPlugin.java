@@ -1,5 +1,8 @@
 package org.embulk.output.kintone;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
 import com.google.common.io.Resources;
 import com.kintone.client.Json;
 import com.kintone.client.model.record.Record;
@@ -57,6 +60,37 @@ public class TestKintoneOutputPlugin extends KintoneOutputPlugin {
         : transactionWithVerifier(config, schema, taskCount, control);
   }
 
+  @Override
+  protected void prepare(PluginTask task, Schema schema) {
+    if (task.getReduceKeyName().isPresent()) {
+      // already mocked by transactionWithVerifier
+      super.prepare(task, schema);
+      return;
+    }
+    List<Record> records =
+        getExistingRecords(
+            task.getDomain(),
+            task.getMode(),
+            task.getSkipIfNonExistingIdOrUpdateKey(),
+            task.getPreferNulls(),
+            task.getIgnoreNulls());
+    MockClient mockClient = new MockClient(task.getDomain(), records, Collections.emptyList(), "");
+    try {
+      mockClient.run(() -> super.prepare(task, schema));
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    // Replace mode deletes every existing record here, before the tasks insert
+    List<Long> ids =
+        KintoneMode.of(task) == KintoneMode.REPLACE
+            ? records.stream().map(Record::getId).sorted().collect(Collectors.toList())
+            : Collections.emptyList();
+    assertThat(
+        task.getDomain(),
+        mockClient.getDeletedIds().stream().sorted().collect(Collectors.toList()),
+        is(ids));
+  }
+
   @Override
   public TransactionalPageOutput open(TaskSource taskSource, Schema schema, int taskIndex) {
     return taskSource.get(String.class, "ReduceKeyName") == null
@@ -143,7 +177,9 @@ public class TestKintoneOutputPlugin extends KintoneOutputPlugin {
         getValues(test, mode, skip, preferNulls, ignoreNulls, field),
         getAddValues(test, mode, skip, preferNulls, ignoreNulls, field),
         getAddRecords(test, mode, skip, preferNulls, ignoreNulls),
-        getUpdateRecords(test, mode, skip, preferNulls, ignoreNulls, field));
+        getUpdateRecords(test, mode, skip, preferNulls, ignoreNulls, field),
+        getDeleteIds(test, mode, skip, preferNulls, ignoreNulls),
+        getExistingRecords(test, mode, skip, preferNulls, ignoreNulls));
   }
 
   private TransactionalPageOutput openWithVerifier(
@@ -161,7 +197,9 @@ public class TestKintoneOutputPlugin extends KintoneOutputPlugin {
         getValues(test, mode, skip, preferNulls, ignoreNulls, field),
         getAddValues(test, mode, skip, preferNulls, ignoreNulls, field),
         getAddRecords(test, mode, skip, preferNulls, ignoreNulls),
-        getUpdateRecords(test, mode, skip, preferNulls, ignoreNulls, field));
+        getUpdateRecords(test, mode, skip, preferNulls, ignoreNulls, field),
+        getDeleteIds(test, mode, skip, preferNulls, ignoreNulls),
+        getExistingRecords(test, mode, skip, preferNulls, ignoreNulls));
   }
 
   private static Set<Column> getDerivedColumns(String test) {
@@ -227,6 +265,40 @@ public class TestKintoneOutputPlugin extends KintoneOutputPlugin {
             .collect(Collectors.toList());
   }
 
+  private static List<Long> getDeleteIds(
+      String test, String mode, Skip skip, boolean preferNulls, boolean ignoreNulls) {
+    String name =
+        String.format(
+            "%s/%s%s%s_delete_ids.json",
+            test,
+            mode,
+            format(skip),
+            ignoreNulls ? "_ignore_nulls" : preferNulls ? "_prefer_nulls" : "");
+    String json = existsResource(name) ? readResource(name) : null;
+    return json == null || json.isEmpty()
+        ? Collections.emptyList()
+        : PARSER.parse(json).asArrayValue().list().stream()
+            .map(value -> value.asIntegerValue().toLong())
+            .collect(Collectors.toList());
+  }
+
+  private static List<Record> getExistingRecords(
+      String test, String mode, Skip skip, boolean preferNulls, boolean ignoreNulls) {
+    String name =
+        String.format(
+            "%s/%s%s%s_existing_records.jsonl",
+            test,
+            mode,
+            format(skip),
+            ignoreNulls ? "_ignore_nulls" : preferNulls ? "_prefer_nulls" : "");
+    String jsonl = existsResource(name) ? readResource(name) : null;
+    return jsonl == null || jsonl.isEmpty()
+        ? Collections.emptyList()
+        : Arrays.stream(jsonl.split("\\r?\\n|\\r"))
+            .map(s -> Json.parse(s, Record.class))
+            .collect(Collectors.toList());
+  }
+
   private static List<RecordForUpdate> getUpdateRecords(
       String test, String mode, Skip skip, boolean preferNulls, boolean ignoreNulls, String field) {
     Function<Record, UpdateKey> key = getKey(field);
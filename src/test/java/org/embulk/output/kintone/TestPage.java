@@ -0,0 +1,176 @@
+package org.embulk.output.kintone;
+
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.verify;
+
+import com.kintone.client.BulkRequestClient;
+import com.kintone.client.RecordClient;
+import com.kintone.client.model.record.NumberFieldValue;
+import com.kintone.client.model.record.Record;
+import com.kintone.client.model.record.RecordForUpdate;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import org.embulk.config.ConfigSource;
+import org.embulk.config.TaskReport;
+import org.embulk.output.kintone.index.Ledger;
+import org.embulk.spi.Column;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Page;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.embulk.util.config.ConfigMapper;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.junit.Before;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockedStatic;
+
+/** Runs the pages through a page output of the task, against a mocked kintone. */
+public class TestPage extends TestKintoneOutputPlugin {
+  private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY =
+      ConfigMapperFactory.builder().addDefaultModules().build();
+  private static final ConfigMapper CONFIG_MAPPER = CONFIG_MAPPER_FACTORY.createConfigMapper();
+
+  private ConfigSource config;
+  private Schema schema;
+  private MockClient client;
+
+  @Before
+  public void before() {
+    config = loadConfigYaml("page/config.yml");
+    schema =
+        Schema.builder()
+            .add("key_single_line_text", Types.STRING)
+            .add("value_number", Types.LONG)
+            .build();
+    client =
+        new MockClient(
+            config.get(String.class, "domain"),
+            Collections.emptyList(),
+            Collections.emptyList(),
+            "");
+  }
+
+  protected void merge(ConfigSource config) {
+    this.config.merge(config);
+  }
+
+  protected void setSchema(Schema schema) {
+    this.schema = schema;
+  }
+
+  protected RecordClient record() {
+    return client.getMockRecordClient();
+  }
+
+  protected BulkRequestClient bulk() {
+    return client.getMockBulkRequestClient();
+  }
+
+  /** Returns the task prepared as in the transaction. */
+  protected PluginTask task() {
+    PluginTask task = CONFIG_MAPPER.map(config, PluginTask.class);
+    task.setDerivedColumns(Collections.emptySet());
+    task.setCheckpointId(task.getCheckpointDirectory().map(directory -> "page"));
+    prepare(task, schema);
+    return task;
+  }
+
+  /** Returns the page of the values, given column by column and record by record. */
+  protected Page page(Object... values) {
+    List<Column> columns = schema.getColumns();
+    return OutputPageBuilder.build(
+        schema,
+        builder -> {
+          for (int i = 0; i < values.length; i++) {
+            String name = columns.get(i % columns.size()).getName();
+            if (values[i] == null) {
+              builder.setNull(name);
+            } else if (values[i] instanceof String) {
+              builder.setString(name, (String) values[i]);
+            } else {
+              builder.setLong(name, ((Number) values[i]).longValue());
+            }
+            if (i % columns.size() == columns.size() - 1) {
+              builder.addRecord();
+            }
+          }
+          return builder.build();
+        });
+  }
+
+  /** Returns the records added, as the key and the value of each. */
+  protected List<String> added() {
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<Record>> captor = ArgumentCaptor.forClass(List.class);
+    verify(record(), atLeast(0)).addRecords(eq(0L), captor.capture());
+    return captor.getAllValues().stream()
+        .flatMap(Collection::stream)
+        .map(
+            record ->
+                String.format(
+                    "%s=%s",
+                    record.getSingleLineTextFieldValue("key_single_line_text"),
+                    record.getNumberFieldValue("value_number")))
+        .collect(Collectors.toList());
+  }
+
+  /** Returns the records updated, as the id or update key and the value of each. */
+  protected List<String> updated() {
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<RecordForUpdate>> captor = ArgumentCaptor.forClass(List.class);
+    verify(record(), atLeast(0)).updateRecords(eq(0L), captor.capture());
+    return captor.getAllValues().stream()
+        .flatMap(Collection::stream)
+        .map(TestPage::toKeyValue)
+        .collect(Collectors.toList());
+  }
+
+  protected static String toKeyValue(RecordForUpdate record) {
+    return String.format(
+        "%s=%s",
+        record.getId() != null ? record.getId() : record.getUpdateKey().getValue(),
+        record.getRecord().getNumberFieldValue("value_number"));
+  }
+
+  /** Returns the hash the ledger keeps for the value written to a key. */
+  protected static long hash(long value) {
+    Record record =
+        new Record().putField("value_number", new NumberFieldValue(BigDecimal.valueOf(value)));
+    return Ledger.hash(record, "key_single_line_text");
+  }
+
+  protected TaskReport runOutput(PluginTask task, Page... pages) {
+    return runOutput(task, 0, pages);
+  }
+
+  protected TaskReport runOutput(PluginTask task, int taskIndex, Page... pages) {
+    AtomicReference<TaskReport> report = new AtomicReference<>();
+    try (MockedStatic<Exec> mocked = mockStatic(Exec.class, CALLS_REAL_METHODS)) {
+      mocked
+          .when(Exec::newTaskReport)
+          .thenAnswer(invocation -> CONFIG_MAPPER_FACTORY.newTaskReport());
+      client.run(
+          () -> {
+            // Held open, so that the threads of the output share the mocked client
+            try (KintoneClient shared = KintoneClient.lazy(() -> task, schema).get();
+                KintonePageOutput output = new KintonePageOutput(task, schema, taskIndex)) {
+              for (Page page : pages) {
+                output.add(page);
+              }
+              output.finish();
+              report.set(output.commit());
+            }
+          });
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    return report.get();
+  }
+}
@@ -0,0 +1,118 @@
+package org.embulk.output.kintone;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.kintone.client.api.bulk.BulkRequestsRequest;
+import com.kintone.client.api.bulk.BulkRequestsResponseBody;
+import com.kintone.client.api.record.AddRecordsResponseBody;
+import com.kintone.client.api.record.GetRecordsByCursorResponseBody;
+import com.kintone.client.api.record.UpdateRecordsResponseBody;
+import com.kintone.client.exception.KintoneApiRuntimeException;
+import com.kintone.client.model.record.Record;
+import com.kintone.client.model.record.SingleLineTextFieldValue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.embulk.output.kintone.index.Ledger;
+import org.embulk.output.kintone.index.PersistentLedger;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class TestPageBulk extends TestPage {
+  @Override
+  public void before() {
+    super.before();
+    merge(config("request_mode: bulk"));
+  }
+
+  @Test
+  public void splitBulkRequests() {
+    merge(config("chunk_size: 1"));
+    Object[] values =
+        IntStream.range(0, 45).boxed().flatMap(i -> Stream.<Object>of("k" + i, i)).toArray();
+    runOutput(task(), page(values));
+    ArgumentCaptor<BulkRequestsRequest> captor = ArgumentCaptor.forClass(BulkRequestsRequest.class);
+    verify(bulk(), times(3)).bulkRequests(captor.capture());
+    assertThat(
+        captor.getAllValues().stream()
+            .map(request -> request.getRequests().size())
+            .collect(Collectors.toList()),
+        contains(20, 20, 5));
+    verify(record(), never()).addRecords(anyLong(), anyList());
+  }
+
+  @Test
+  public void completeEachChunk() throws IOException {
+    merge(config("mode: upsert", "update_key: key_single_line_text"));
+    merge(config(String.format("ledger_directory: %s", Files.createTempDirectory("ledger"))));
+    PluginTask task = task();
+    // a exists and is updated, b does not and is added, in the same bulk request
+    GetRecordsByCursorResponseBody cursor = mock(GetRecordsByCursorResponseBody.class);
+    when(cursor.getRecords())
+        .thenReturn(
+            Collections.singletonList(
+                new Record().putField("key_single_line_text", new SingleLineTextFieldValue("a"))));
+    when(record().createCursor(anyLong(), anyList(), anyString())).thenReturn("lookup");
+    when(record().getRecordsByCursor(eq("lookup"))).thenReturn(cursor);
+    AddRecordsResponseBody added = mock(AddRecordsResponseBody.class);
+    when(added.getIds()).thenReturn(Collections.singletonList(2L));
+    BulkRequestsResponseBody response = mock(BulkRequestsResponseBody.class);
+    when(response.getResults())
+        .thenReturn(Arrays.asList(added, mock(UpdateRecordsResponseBody.class)));
+    when(bulk().bulkRequests(any(BulkRequestsRequest.class))).thenReturn(response);
+    runOutput(task, page("a", 1, "b", 2));
+    verify(bulk(), times(1)).bulkRequests(any(BulkRequestsRequest.class));
+    // Both records are written back to the ledger only by the callbacks of their chunks
+    PersistentLedger.merge(task.getLedgerFile().get());
+    Ledger ledger = Ledger.open(new File(task.getLedgerFile().get()));
+    assertThat(ledger.get("a"), is(hash(1)));
+    assertThat(ledger.get("b"), is(hash(2)));
+  }
+
+  @Test
+  public void blameFailedChunk() {
+    merge(config("chunk_size: 1"));
+    KintoneApiRuntimeException exception = mock(KintoneApiRuntimeException.class);
+    when(exception.getStatusCode()).thenReturn(400);
+    when(exception.getContent())
+        .thenReturn("{\"results\":[{},{\"code\":\"CB_VA01\",\"message\":\"invalid\"},{}]}");
+    when(bulk().bulkRequests(any(BulkRequestsRequest.class))).thenThrow(exception);
+    PluginTask task = task();
+    Exception e =
+        assertThrows(RuntimeException.class, () -> runOutput(task, page("a", 1, "b", 2, "c", 3)));
+    assertThat(
+        getMessages(e),
+        hasItem(
+            "kintone throw exception in bulkRequest at request 2/3 addRecords(1 records):"
+                + " {\"code\":\"CB_VA01\",\"message\":\"invalid\"}"));
+  }
+
+  private static List<String> getMessages(Throwable throwable) {
+    List<String> messages = new ArrayList<>();
+    for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+      messages.add(cause.getMessage());
+    }
+    return messages;
+  }
+}
@@ -0,0 +1,60 @@
+package org.embulk.output.kintone;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.embulk.config.TaskReport;
+import org.junit.Test;
+
+public class TestPageCheckpoint extends TestPage {
+  @Test
+  public void resume() throws IOException {
+    PluginTask task = task(checkpointDirectory());
+    // The first two records were acknowledged, and the fourth inserted after them
+    KintoneCheckpoint checkpoint = KintoneCheckpoint.open(task, 0);
+    checkpoint.save(2);
+    checkpoint.add(Collections.singletonList(3L));
+    TaskReport report = runOutput(task, page("a", 1, "b", 2, "c", 3, "d", 4, "e", 5));
+    assertThat(added(), contains("c=3", "e=5"));
+    assertThat(report.get(Long.class, "resumed_records"), is(3L));
+  }
+
+  @Test
+  public void saveAndResume() throws IOException {
+    merge(config("checkpoint_interval: 2"));
+    when(record().addRecords(anyLong(), anyList()))
+        .thenAnswer(
+            invocation -> {
+              List<?> records = invocation.getArgument(1);
+              return LongStream.range(0, records.size()).boxed().collect(Collectors.toList());
+            });
+    PluginTask task = task(checkpointDirectory());
+    runOutput(task, page("a", 1, "b", 2), page("c", 3));
+    // The position is saved after the first page, the last record is kept as inserted after it
+    KintoneCheckpoint checkpoint = KintoneCheckpoint.open(task, 0);
+    assertThat(checkpoint.getCommitted(), is(2L));
+    assertThat(checkpoint.isCommitted(2), is(true));
+    TaskReport report = runOutput(task, page("a", 1, "b", 2), page("c", 3), page("d", 4));
+    assertThat(added(), contains("a=1", "b=2", "c=3", "d=4"));
+    assertThat(report.get(Long.class, "resumed_records"), is(3L));
+  }
+
+  private PluginTask task(String checkpointDirectory) {
+    merge(config(String.format("checkpoint_directory: %s", checkpointDirectory)));
+    return task();
+  }
+
+  private static String checkpointDirectory() throws IOException {
+    return Files.createTempDirectory("checkpoint").toString();
+  }
+}
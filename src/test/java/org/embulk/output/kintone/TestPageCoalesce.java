@@ -0,0 +1,53 @@
+package org.embulk.output.kintone;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+import org.embulk.config.TaskReport;
+import org.junit.Test;
+
+public class TestPageCoalesce extends TestPage {
+  @Override
+  public void before() {
+    super.before();
+    merge(config("mode: update", "update_key: key_single_line_text"));
+  }
+
+  @Test
+  public void none() {
+    TaskReport report = runOutput(task(), page("a", 1, "a", 2, "b", 3));
+    assertThat(updated(), contains("a=1", "a=2", "b=3"));
+    assertThat(report.get(Long.class, "coalesced_records"), is(0L));
+  }
+
+  @Test
+  public void last() {
+    merge(config("coalesce_duplicates: last", "ignore_nulls: true"));
+    TaskReport report = runOutput(task(), page("a", 1, "a", null, "b", 3, "a", 4, "b", 5));
+    assertThat(updated(), contains("a=4", "b=5"));
+    assertThat(report.get(Long.class, "coalesced_records"), is(3L));
+  }
+
+  @Test
+  public void merge() {
+    merge(config("coalesce_duplicates: merge", "ignore_nulls: true"));
+    TaskReport report = runOutput(task(), page("a", 1, "a", null, "b", 3));
+    assertThat(updated(), contains("a=1", "b=3"));
+    assertThat(report.get(Long.class, "coalesced_records"), is(1L));
+  }
+
+  @Test
+  public void upsert() {
+    merge(config("mode: upsert", "coalesce_duplicates: last"));
+    // None of the keys exists
+    when(record().createCursor(anyLong(), anyList(), anyString())).thenReturn("id");
+    TaskReport report = runOutput(task(), page("a", 1, "a", 2, "b", 3, "b", 4));
+    assertThat(added(), contains("a=2", "b=4"));
+    assertThat(report.get(Long.class, "coalesced_records"), is(2L));
+  }
+}
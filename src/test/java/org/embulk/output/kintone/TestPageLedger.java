@@ -0,0 +1,78 @@
+package org.embulk.output.kintone;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import org.embulk.config.TaskReport;
+import org.embulk.output.kintone.index.Ledger;
+import org.embulk.output.kintone.index.PersistentLedger;
+import org.junit.Test;
+
+public class TestPageLedger extends TestPage {
+  @Override
+  public void before() {
+    super.before();
+    merge(config("mode: update", "update_key: key_single_line_text"));
+  }
+
+  @Test
+  public void skipLedgered() throws IOException {
+    PluginTask task = task(ledger("a", 1));
+    TaskReport report = runOutput(task, page("a", 1, "b", 2));
+    assertThat(updated(), contains("b=2"));
+    assertThat(report.get(Long.class, "ledger_skipped_records"), is(1L));
+    // The delta of the written records is merged at the end of the transaction
+    PersistentLedger.merge(task.getLedgerFile().get());
+    Ledger ledger = Ledger.open(new File(task.getLedgerFile().get()));
+    assertThat(ledger.get("a"), is(hash(1)));
+    assertThat(ledger.get("b"), is(hash(2)));
+  }
+
+  @Test
+  public void writeBackToLedgered() throws IOException {
+    // The second value is the ledgered one, but the first value is written before it
+    PluginTask task = task(ledger("a", 1));
+    TaskReport report = runOutput(task, page("a", 2, "a", 1));
+    assertThat(updated(), contains("a=2", "a=1"));
+    assertThat(report.get(Long.class, "ledger_skipped_records"), is(0L));
+    PersistentLedger.merge(task.getLedgerFile().get());
+    assertThat(Ledger.open(new File(task.getLedgerFile().get())).get("a"), is(hash(1)));
+  }
+
+  @Test
+  public void writeBackToLedgeredCoalesced() throws IOException {
+    merge(config("coalesce_duplicates: last"));
+    PluginTask task = task(ledger("a", 1));
+    TaskReport report = runOutput(task, page("a", 2, "a", 1));
+    assertThat(updated(), contains("a=1"));
+    assertThat(report.get(Long.class, "coalesced_records"), is(1L));
+    assertThat(report.get(Long.class, "ledger_skipped_records"), is(0L));
+  }
+
+  @Test
+  public void skipQueued() throws IOException {
+    PluginTask task = task(ledger("a", 1));
+    TaskReport report = runOutput(task, page("a", 2, "a", 2, "a", 3));
+    assertThat(updated(), contains("a=2", "a=3"));
+    assertThat(report.get(Long.class, "ledger_skipped_records"), is(1L));
+  }
+
+  private PluginTask task(Map<String, Long> ledger) throws IOException {
+    merge(config(String.format("ledger_directory: %s", Files.createTempDirectory("ledger"))));
+    PluginTask task = task();
+    Ledger.of(ledger).write(new File(task.getLedgerFile().get()));
+    return task;
+  }
+
+  private static Map<String, Long> ledger(String key, long value) {
+    Map<String, Long> ledger = new HashMap<>();
+    ledger.put(key, hash(value));
+    return ledger;
+  }
+}
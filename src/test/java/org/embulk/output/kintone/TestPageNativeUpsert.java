@@ -0,0 +1,105 @@
+package org.embulk.output.kintone;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.kintone.client.api.record.UpdateRecordsRequest;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.embulk.config.ConfigException;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class TestPageNativeUpsert extends TestPage {
+  @Override
+  public void before() {
+    super.before();
+    merge(config("mode: upsert", "update_key: key_single_line_text", "upsert_strategy: native"));
+  }
+
+  @Test
+  public void upsert() {
+    runOutput(task(), page("a", 1, "b", 2));
+    List<UpdateRecordsRequest> requests = requests();
+    assertThat(requests.size(), is(1));
+    assertThat(requests.get(0).getApp(), is(0L));
+    assertThat(requests.get(0).getUpsert(), is(true));
+    assertThat(upserted(), contains("a=1", "b=2"));
+    // The keys are sent without being looked up
+    verify(record(), never()).createCursor(anyLong(), anyList(), anyString());
+    verify(record(), never()).updateRecords(anyLong(), anyList());
+  }
+
+  @Test
+  public void skipMissingKeys() {
+    runOutput(task(), page("a", 1, null, 2));
+    assertThat(upserted(), contains("a=1"));
+    assertThat(added(), is(empty()));
+  }
+
+  @Test
+  public void insertMissingKeys() {
+    merge(config("skip_if_non_existing_id_or_update_key: never"));
+    runOutput(task(), page("a", 1, null, 2));
+    assertThat(upserted(), contains("a=1"));
+    assertThat(added(), contains("=2"));
+  }
+
+  @Test
+  public void requireUpdateKey() {
+    setSchema(Schema.builder().add("$id", Types.LONG).add("value_number", Types.LONG).build());
+    merge(config("update_key: null"));
+    assertConfigException(
+        "When upsert_strategy is native, require update_key and"
+            + " skip_if_non_existing_id_or_update_key other than always.");
+  }
+
+  @Test
+  public void requireSkipOtherThanAlways() {
+    merge(config("skip_if_non_existing_id_or_update_key: always"));
+    assertConfigException(
+        "When upsert_strategy is native, require update_key and"
+            + " skip_if_non_existing_id_or_update_key other than always.");
+  }
+
+  @Test
+  public void requireNoSkipUnchanged() {
+    merge(config("skip_unchanged: true"));
+    assertConfigException("When upsert_strategy is native, require no skip_unchanged.");
+  }
+
+  private List<UpdateRecordsRequest> requests() {
+    ArgumentCaptor<UpdateRecordsRequest> captor =
+        ArgumentCaptor.forClass(UpdateRecordsRequest.class);
+    verify(record(), atLeast(0)).updateRecords(captor.capture());
+    return captor.getAllValues();
+  }
+
+  private List<String> upserted() {
+    return requests().stream()
+        .map(UpdateRecordsRequest::getRecords)
+        .flatMap(Collection::stream)
+        .map(TestPage::toKeyValue)
+        .collect(Collectors.toList());
+  }
+
+  private void assertConfigException(String message) {
+    // The mode is validated while the task is prepared
+    Exception e = assertThrows(RuntimeException.class, this::task);
+    assertThat(e.getCause(), is(instanceOf(ConfigException.class)));
+    assertThat(e.getCause().getMessage(), is(message));
+  }
+}
@@ -21,6 +21,12 @@ public class TestTaskMode extends TestTask {
     runOutput();
   }
 
+  @Test
+  public void testReplace() throws Exception {
+    merge(config("mode: replace"));
+    runOutput();
+  }
+
   @Test
   public void testUpdate() throws Exception {
     merge(config("mode: update", "update_key: string_number"));
@@ -71,6 +71,17 @@ public class TestTaskSkip extends TestTask {
     runOutput();
   }
 
+  @Test
+  public void testDelete() throws Exception {
+    merge(config("mode: delete", "update_key: string_single_line_text"));
+    merge(config("skip_if_non_existing_id_or_update_key: auto"));
+    runOutput();
+    merge(config("skip_if_non_existing_id_or_update_key: never"));
+    assertNoIdOrUpdateKeyValueWasSpecified();
+    merge(config("skip_if_non_existing_id_or_update_key: always"));
+    runOutput();
+  }
+
   private void assertNoIdOrUpdateKeyValueWasSpecified() {
     Exception e = assertThrows(PartialExecutionException.class, this::runOutput);
     assertThat(e.getCause(), is(instanceOf(RuntimeException.class)));
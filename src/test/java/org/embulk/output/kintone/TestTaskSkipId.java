@@ -71,10 +71,30 @@ public class TestTaskSkipId extends TestTask {
     runOutput();
   }
 
+  @Test
+  public void testDelete() throws Exception {
+    merge(config("mode: delete", "update_key: $id"));
+    merge(config("skip_if_non_existing_id_or_update_key: auto"));
+    runOutput();
+    merge(config("skip_if_non_existing_id_or_update_key: never"));
+    assertNonExistingIdOrUpdateKeyWasSpecified();
+    merge(config("skip_if_non_existing_id_or_update_key: always"));
+    runOutput();
+  }
+
   private void assertNoIdOrUpdateKeyValueWasSpecified() {
     Exception e = assertThrows(PartialExecutionException.class, this::runOutput);
     assertThat(e.getCause(), is(instanceOf(RuntimeException.class)));
     assertThat(e.getCause().getCause(), is(instanceOf(RuntimeException.class)));
     assertThat(e.getCause().getCause().getMessage(), is("No id or update key value was specified"));
   }
+
+  private void assertNonExistingIdOrUpdateKeyWasSpecified() {
+    Exception e = assertThrows(PartialExecutionException.class, this::runOutput);
+    assertThat(e.getCause(), is(instanceOf(RuntimeException.class)));
+    assertThat(e.getCause().getCause(), is(instanceOf(RuntimeException.class)));
+    assertThat(
+        e.getCause().getCause().getMessage(),
+        is("Non existing id or update key '0' was specified"));
+  }
 }
@@ -0,0 +1,19 @@
+package org.embulk.output.kintone;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.junit.Test;
+
+@NotThreadSafe
+public class TestTaskSkipUnchanged extends TestTask {
+  @Override
+  public void before() {
+    super.before();
+    merge(config("domain: task/skip_unchanged"));
+  }
+
+  @Test
+  public void testUpsert() throws Exception {
+    merge(config("mode: upsert", "update_key: string_single_line_text"));
+    runOutput();
+  }
+}
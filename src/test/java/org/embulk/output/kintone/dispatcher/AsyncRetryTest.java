@@ -0,0 +1,113 @@
+package org.embulk.output.kintone.dispatcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.embulk.output.kintone.KintoneRetryOption;
+import org.junit.Test;
+
+public class AsyncRetryTest {
+  @Test
+  public void retryUntilSuccess() {
+    AtomicInteger attempts = new AtomicInteger();
+    AsyncRetry retry = new AsyncRetry(option(), e -> e instanceof IllegalStateException);
+    String actual =
+        retry
+            .execute(
+                () ->
+                    attempts.incrementAndGet() < 3
+                        ? failed(new IllegalStateException("locked"))
+                        : CompletableFuture.completedFuture("done"))
+            .join();
+    assertThat(actual, is("done"));
+    assertThat(attempts.get(), is(3));
+  }
+
+  @Test
+  public void giveUpWhenNotRetryable() {
+    AtomicInteger attempts = new AtomicInteger();
+    AsyncRetry retry = new AsyncRetry(option(), e -> e instanceof IllegalStateException);
+    CompletableFuture<String> future =
+        retry.execute(
+            () -> {
+              attempts.incrementAndGet();
+              return failed(new IllegalArgumentException("invalid"));
+            });
+    CompletionException e = assertThrows(CompletionException.class, future::join);
+    assertThat(e.getCause().getMessage(), is("kintone throw exception"));
+    assertThat(attempts.get(), is(1));
+  }
+
+  @Test
+  public void giveUpAfterLimit() {
+    AtomicInteger attempts = new AtomicInteger();
+    AsyncRetry retry = new AsyncRetry(option(), e -> true);
+    CompletableFuture<String> future =
+        retry.execute(
+            () -> {
+              attempts.incrementAndGet();
+              return failed(new IllegalStateException("locked"));
+            });
+    assertThrows(CompletionException.class, future::join);
+    assertThat(attempts.get(), is(4));
+  }
+
+  @Test
+  public void giveUpAfterBudget() {
+    AtomicInteger attempts = new AtomicInteger();
+    KintoneRetryOption option = option();
+    when(option.getBudgetMillis()).thenReturn(Optional.of(0L));
+    AsyncRetry retry = new AsyncRetry(option, e -> true);
+    CompletableFuture<String> future =
+        retry.execute(
+            () -> {
+              attempts.incrementAndGet();
+              return failed(new IllegalStateException("locked"));
+            });
+    assertThrows(CompletionException.class, future::join);
+    assertThat(attempts.get(), is(1));
+  }
+
+  @Test
+  public void decorrelatedJitter() {
+    RetryPolicy policy = new RetryPolicy(10, 100, 1000);
+    Set<Long> firstWaits = new HashSet<>();
+    for (int i = 0; i < 100; i++) {
+      long first = policy.getWaitMillis(0);
+      assertThat(first >= 100 && first <= 300, is(true));
+      firstWaits.add(first);
+    }
+    // The first retries of the requests failing together are spread out
+    assertThat(firstWaits.size() > 1, is(true));
+    long wait = 0;
+    for (int i = 0; i < 100; i++) {
+      long next = policy.getWaitMillis(wait);
+      assertThat(next >= 100 && next <= Math.min(1000, Math.max(100, wait) * 3), is(true));
+      wait = next;
+    }
+    assertThat(new RetryPolicy(10, 100, 50).getWaitMillis(1000), is(50L));
+  }
+
+  private static <T> CompletableFuture<T> failed(Throwable throwable) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(throwable);
+    return future;
+  }
+
+  private static KintoneRetryOption option() {
+    KintoneRetryOption option = mock(KintoneRetryOption.class);
+    when(option.getLimit()).thenReturn(3);
+    when(option.getInitialWaitMillis()).thenReturn(1);
+    when(option.getMaxWaitMillis()).thenReturn(4);
+    return option;
+  }
+}
@@ -0,0 +1,79 @@
+package org.embulk.output.kintone.dispatcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.stream.IntStream;
+import org.embulk.config.ConfigException;
+import org.embulk.output.kintone.KintoneAdaptiveChunkSizeOption;
+import org.junit.Test;
+
+public class ChunkSizeControllerTest {
+  @Test
+  public void fixed() {
+    ChunkSizeController controller = ChunkSizeController.fixed(100);
+    controller.onThrottled();
+    IntStream.range(0, 100).forEach(i -> controller.onSuccess(0));
+    assertThat(controller.get(), is(100));
+  }
+
+  @Test
+  public void increase() {
+    ChunkSizeController controller = ChunkSizeController.adaptive(50, option());
+    IntStream.range(0, 4).forEach(i -> controller.onSuccess(100));
+    assertThat(controller.get(), is(50));
+    controller.onSuccess(100);
+    assertThat(controller.get(), is(60));
+    IntStream.range(0, 100).forEach(i -> controller.onSuccess(100));
+    assertThat(controller.get(), is(80));
+  }
+
+  @Test
+  public void keepWhileSlow() {
+    ChunkSizeController controller = ChunkSizeController.adaptive(50, option());
+    IntStream.range(0, 4).forEach(i -> controller.onSuccess(100));
+    controller.onSuccess(1000);
+    assertThat(controller.get(), is(50));
+  }
+
+  @Test
+  public void decrease() {
+    ChunkSizeController controller = ChunkSizeController.adaptive(50, option());
+    controller.onThrottled();
+    assertThat(controller.get(), is(25));
+    controller.onThrottled();
+    assertThat(controller.get(), is(20));
+  }
+
+  @Test
+  public void bounds() {
+    assertThat(ChunkSizeController.adaptive(100, option()).get(), is(80));
+    assertThat(ChunkSizeController.adaptive(1, option()).get(), is(20));
+    KintoneAdaptiveChunkSizeOption option = option();
+    when(option.getMinSize()).thenReturn(90);
+    assertThrows(ConfigException.class, () -> ChunkSizeController.adaptive(100, option));
+  }
+
+  @Test
+  public void maxSizeOverLimit() {
+    KintoneAdaptiveChunkSizeOption option = option();
+    when(option.getMaxSize()).thenReturn(101);
+    assertThrows(ConfigException.class, () -> ChunkSizeController.adaptive(100, option));
+    when(option.getMaxSize()).thenReturn(100);
+    assertThat(ChunkSizeController.adaptive(100, option).get(), is(100));
+  }
+
+  private static KintoneAdaptiveChunkSizeOption option() {
+    KintoneAdaptiveChunkSizeOption option = mock(KintoneAdaptiveChunkSizeOption.class);
+    when(option.getMinSize()).thenReturn(20);
+    when(option.getMaxSize()).thenReturn(80);
+    when(option.getTargetLatencyMillis()).thenReturn(500L);
+    when(option.getIncreaseStep()).thenReturn(10);
+    when(option.getDecreaseFactor()).thenReturn(0.5);
+    when(option.getWindowSize()).thenReturn(5);
+    return option;
+  }
+}
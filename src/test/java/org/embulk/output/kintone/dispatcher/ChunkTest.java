@@ -0,0 +1,37 @@
+package org.embulk.output.kintone.dispatcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import com.kintone.client.model.record.Record;
+import com.kintone.client.model.record.RecordForUpdate;
+import com.kintone.client.model.record.UpdateKey;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class ChunkTest {
+  @Test
+  public void delete() {
+    Chunk chunk = Chunk.delete(Arrays.asList(1L, 2L, 3L));
+    assertThat(chunk.size(), is(3));
+    assertThat(chunk.getKeys(), contains("$id=1", "$id=2", "$id=3"));
+    assertThat(chunk.toString(), is("deleteRecords(3 records)"));
+  }
+
+  @Test
+  public void upsert() {
+    List<RecordForUpdate> records =
+        Arrays.asList(
+            new RecordForUpdate(new UpdateKey("key", "a"), new Record()),
+            new RecordForUpdate(new UpdateKey("key", "b"), new Record()));
+    Chunk chunk = Chunk.upsert(records, Arrays.asList("key=a", "key=b"), upserted -> {});
+    assertThat(chunk.size(), is(2));
+    assertThat(chunk.getKeys(), contains("key=a", "key=b"));
+    assertThat(chunk.toString(), is("updateRecords(2 records, upsert)"));
+    assertThat(
+        Chunk.update(records, Arrays.asList("key=a", "key=b")).toString(),
+        is("updateRecords(2 records)"));
+  }
+}
@@ -0,0 +1,81 @@
+package org.embulk.output.kintone.dispatcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.kintone.client.exception.KintoneApiRuntimeException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.embulk.output.kintone.KintoneCircuitBreakerOption;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+  @Test
+  public void openAndRampUp() throws InterruptedException {
+    CircuitBreaker breaker = CircuitBreaker.of("ramp-up.example.com", 1, option());
+    trip(breaker);
+    assertThat(breaker.acquire() >= TimeUnit.MILLISECONDS.toNanos(40), is(true));
+    // Only one probe is in flight until it succeeds
+    CountDownLatch acquired = new CountDownLatch(1);
+    Thread thread =
+        new Thread(
+            () -> {
+              breaker.acquire();
+              acquired.countDown();
+            });
+    thread.start();
+    assertThat(acquired.await(100, TimeUnit.MILLISECONDS), is(false));
+    breaker.release(null);
+    assertThat(acquired.await(1, TimeUnit.SECONDS), is(true));
+    breaker.acquire();
+    breaker.release(null);
+    breaker.release(null);
+    // Closed again
+    breaker.acquire();
+    breaker.acquire();
+    assertThat(breaker.acquire() < TimeUnit.MILLISECONDS.toNanos(40), is(true));
+  }
+
+  @Test
+  public void openAgainWhenProbeFails() {
+    CircuitBreaker breaker = CircuitBreaker.of("probe.example.com", 1, option());
+    trip(breaker);
+    breaker.acquire();
+    breaker.release(lockError());
+    assertThat(breaker.acquire() >= TimeUnit.MILLISECONDS.toNanos(40), is(true));
+  }
+
+  @Test
+  public void isLockError() {
+    assertThat(CircuitBreaker.isLockError(lockError()), is(true));
+    assertThat(CircuitBreaker.isLockError(new IllegalStateException()), is(false));
+    assertThat(CircuitBreaker.isLockError(null), is(false));
+  }
+
+  private static void trip(CircuitBreaker breaker) {
+    for (int i = 0; i < 4; i++) {
+      breaker.acquire();
+      breaker.release(i % 2 == 0 ? null : lockError());
+    }
+  }
+
+  private static KintoneApiRuntimeException lockError() {
+    KintoneApiRuntimeException exception = mock(KintoneApiRuntimeException.class);
+    when(exception.getStatusCode()).thenReturn(409);
+    when(exception.getContent()).thenReturn("{\"code\":\"GAIA_RE18\"}");
+    return exception;
+  }
+
+  private static KintoneCircuitBreakerOption option() {
+    KintoneCircuitBreakerOption option = mock(KintoneCircuitBreakerOption.class);
+    when(option.getWindowSeconds()).thenReturn(10);
+    when(option.getMinRequests()).thenReturn(4);
+    when(option.getLockErrorRate()).thenReturn(0.5);
+    when(option.getOpenMillis()).thenReturn(50L);
+    when(option.getHalfOpenRequests()).thenReturn(1);
+    when(option.getRampUpSteps()).thenReturn(1);
+    return option;
+  }
+}
@@ -0,0 +1,104 @@
+package org.embulk.output.kintone.dispatcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.kintone.client.exception.KintoneApiRuntimeException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import org.junit.Test;
+
+public class DeadLetterTest {
+  @Test
+  public void bisect() throws IOException {
+    File file = newFile();
+    List<Long> sent = new ArrayList<>();
+    DeadLetter deadLetter = new DeadLetter(file);
+    // Records 3 and 6 are rejected without their positions
+    deadLetter
+        .send(
+            Chunk.delete(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L)),
+            send(sent, Arrays.asList(3L, 6L), "{\"code\":\"GAIA_RE01\"}"))
+        .join();
+    deadLetter.close();
+    assertThat(sent, contains(1L, 2L, 4L, 5L, 7L));
+    assertThat(deadLetter.getCount(), is(2L));
+    List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    assertThat(lines.size(), is(2));
+    assertThat(lines.get(0).startsWith("{\"id\":3,"), is(true));
+    assertThat(lines.get(1).startsWith("{\"id\":6,"), is(true));
+  }
+
+  @Test
+  public void positions() throws IOException {
+    List<Long> sent = new ArrayList<>();
+    List<Integer> attempts = new ArrayList<>();
+    DeadLetter deadLetter = new DeadLetter(newFile());
+    Function<Chunk, CompletableFuture<Void>> send =
+        send(
+            sent,
+            Collections.singletonList(3L),
+            "{\"code\":\"CB_VA01\",\"errors\":{\"records[2].text.value\":{\"messages\":[\"x\"]}}}");
+    deadLetter
+        .send(
+            Chunk.delete(Arrays.asList(1L, 2L, 3L, 4L)),
+            chunk -> {
+              attempts.add(chunk.size());
+              return send.apply(chunk);
+            })
+        .join();
+    deadLetter.close();
+    assertThat(sent, contains(1L, 2L, 4L));
+    assertThat(attempts, contains(4, 3));
+    assertThat(deadLetter.getCount(), is(1L));
+  }
+
+  @Test
+  public void otherErrors() throws IOException {
+    DeadLetter deadLetter = new DeadLetter(newFile());
+    CompletableFuture<Void> future =
+        deadLetter.send(
+            Chunk.delete(Arrays.asList(1L, 2L)),
+            send(new ArrayList<>(), Collections.singletonList(1L), "{\"code\":\"GAIA_NO01\"}"));
+    assertThrows(CompletionException.class, future::join);
+    assertThat(deadLetter.getCount(), is(0L));
+  }
+
+  private static Function<Chunk, CompletableFuture<Void>> send(
+      List<Long> sent, List<Long> rejected, String content) {
+    return chunk -> {
+      CompletableFuture<Void> future = new CompletableFuture<>();
+      for (int i = 0; i < chunk.size(); i++) {
+        if (rejected.contains((Long) chunk.getRecord(i))) {
+          KintoneApiRuntimeException exception = mock(KintoneApiRuntimeException.class);
+          when(exception.getStatusCode()).thenReturn(400);
+          when(exception.getContent()).thenReturn(content);
+          future.completeExceptionally(exception);
+          return future;
+        }
+      }
+      for (int i = 0; i < chunk.size(); i++) {
+        sent.add((Long) chunk.getRecord(i));
+      }
+      future.complete(null);
+      return future;
+    };
+  }
+
+  private static File newFile() throws IOException {
+    return new File(Files.createTempDirectory("dead-letter").toFile(), "dead-letter.jsonl");
+  }
+}
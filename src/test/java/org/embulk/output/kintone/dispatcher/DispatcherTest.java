@@ -0,0 +1,88 @@
+package org.embulk.output.kintone.dispatcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.embulk.config.ConfigException;
+import org.junit.Test;
+
+public class DispatcherTest {
+  @Test
+  public void sameKeyInOrder() throws Exception {
+    List<Integer> actual = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch latch = new CountDownLatch(1);
+    Dispatcher dispatcher = new Dispatcher(4);
+    dispatcher.dispatch(
+        Collections.singletonList("a"),
+        () ->
+            run(
+                () -> {
+                  await(latch);
+                  actual.add(1);
+                }));
+    dispatcher.dispatch(Collections.singletonList("b"), () -> run(() -> actual.add(2)));
+    dispatcher.dispatch(Collections.singletonList("a"), () -> run(() -> actual.add(3)));
+    latch.countDown();
+    dispatcher.await();
+    assertThat(actual.indexOf(1) < actual.indexOf(3), is(true));
+    assertThat(actual.size(), is(3));
+  }
+
+  @Test
+  public void failure() {
+    Dispatcher dispatcher = new Dispatcher(2);
+    dispatcher.dispatch(
+        Collections.emptyList(),
+        () ->
+            run(
+                () -> {
+                  throw new IllegalStateException("failed");
+                }));
+    IllegalStateException e = assertThrows(IllegalStateException.class, dispatcher::await);
+    assertThat(e.getMessage(), is("failed"));
+  }
+
+  @Test
+  public void dependentOfFailureIsNotRun() {
+    List<Integer> actual = Collections.synchronizedList(new ArrayList<>());
+    Dispatcher dispatcher = new Dispatcher(2);
+    dispatcher.dispatch(
+        Collections.singletonList("a"),
+        () ->
+            run(
+                () -> {
+                  throw new IllegalStateException("failed");
+                }));
+    try {
+      dispatcher.dispatch(Collections.singletonList("a"), () -> run(() -> actual.add(1)));
+    } catch (IllegalStateException e) {
+      // the first request may have failed already
+    }
+    assertThrows(IllegalStateException.class, dispatcher::await);
+    assertThat(actual.isEmpty(), is(true));
+  }
+
+  @Test
+  public void invalidMaxConcurrentRequests() {
+    assertThrows(ConfigException.class, () -> new Dispatcher(0));
+  }
+
+  private static CompletableFuture<Void> run(Runnable request) {
+    return CompletableFuture.runAsync(request);
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
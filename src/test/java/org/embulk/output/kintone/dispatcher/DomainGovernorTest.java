@@ -0,0 +1,82 @@
+package org.embulk.output.kintone.dispatcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.embulk.config.ConfigException;
+import org.junit.Test;
+
+public class DomainGovernorTest {
+  @Test
+  public void sharedByDomain() {
+    DomainGovernor governor = DomainGovernor.of("shared.cybozu.com", 1, null);
+    assertThat(DomainGovernor.of("shared.cybozu.com", 1, null) == governor, is(true));
+    assertThat(DomainGovernor.of("other.cybozu.com", 1, null) == governor, is(false));
+  }
+
+  @Test
+  public void maxDomainConcurrency() throws Exception {
+    DomainGovernor governor = DomainGovernor.of("concurrency.cybozu.com", 1, null);
+    governor.acquire();
+    CountDownLatch acquired = new CountDownLatch(1);
+    Thread thread =
+        new Thread(
+            () -> {
+              governor.acquire();
+              acquired.countDown();
+              governor.release();
+            });
+    thread.start();
+    assertThat(acquired.await(200, TimeUnit.MILLISECONDS), is(false));
+    governor.release();
+    assertThat(acquired.await(5, TimeUnit.SECONDS), is(true));
+    thread.join();
+  }
+
+  @Test
+  public void maxRequestsPerSecond() {
+    DomainGovernor governor = DomainGovernor.of("rate.cybozu.com", null, 2.0);
+    long waited = 0;
+    for (int i = 0; i < 3; i++) {
+      waited += governor.acquire();
+      governor.release();
+    }
+    assertThat(waited >= TimeUnit.MILLISECONDS.toNanos(300), is(true));
+  }
+
+  @Test
+  public void releaseWhenInterrupted() throws Exception {
+    DomainGovernor governor = DomainGovernor.of("interrupted.cybozu.com", 2, 0.1);
+    governor.acquire();
+    governor.release();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                governor.acquire();
+              } catch (DispatchException e) {
+                failure.set(e);
+              }
+            });
+    thread.start();
+    // Waiting for a token while holding a permit
+    while (governor.getAvailablePermits() == 2) {
+      Thread.sleep(10);
+    }
+    thread.interrupt();
+    thread.join();
+    assertThat(failure.get() instanceof DispatchException, is(true));
+    assertThat(governor.getAvailablePermits(), is(2));
+  }
+
+  @Test
+  public void invalidLimits() {
+    assertThrows(ConfigException.class, () -> DomainGovernor.of("invalid.cybozu.com", 0, null));
+    assertThrows(ConfigException.class, () -> DomainGovernor.of("invalid.cybozu.com", null, 0.0));
+  }
+}
@@ -0,0 +1,75 @@
+package org.embulk.output.kintone.dispatcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.embulk.config.ConfigException;
+import org.junit.Test;
+
+public class LookupTest {
+  @Test
+  public void split() {
+    Lookup lookup = new Lookup(18, 1);
+    // "key in (" and ")" take 9 bytes
+    assertThat(
+        lookup.split("key", Arrays.asList("\"a\"", "\"b\"", "\"c\"", "\"ddddddddddddddd\"")),
+        contains("key in (\"a\",\"b\")", "key in (\"c\")", "key in (\"ddddddddddddddd\")"));
+    assertThat(
+        new Lookup(8192, 1).split("key", Arrays.asList("\"a\"", "\"b\"")),
+        contains("key in (\"a\",\"b\")"));
+    assertThat(lookup.split("key", Arrays.asList("\"a\"", "\"b\"")).size(), is(1));
+    assertThat(lookup.split("キー", Arrays.asList("\"a\"", "\"b\"")).size(), is(2));
+    assertThat(lookup.split("key", Collections.emptyList()).isEmpty(), is(true));
+  }
+
+  @Test
+  public void execute() {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    List<String> queries = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      queries.add(String.valueOf(i));
+    }
+    List<Integer> results = new ArrayList<>();
+    new Lookup(100, 3)
+        .execute(
+            queries,
+            query ->
+                CompletableFuture.supplyAsync(
+                    () -> {
+                      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                      try {
+                        Thread.sleep(5);
+                      } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                      }
+                      running.decrementAndGet();
+                      return Integer.parseInt(query);
+                    },
+                    executor),
+            results::add)
+        .join();
+    executor.shutdown();
+    Collections.sort(results);
+    assertThat(results.size(), is(20));
+    assertThat(results.get(19), is(19));
+    assertThat(maxRunning.get() <= 3, is(true));
+  }
+
+  @Test
+  public void invalid() {
+    assertThrows(ConfigException.class, () -> new Lookup(0, 1));
+    assertThrows(ConfigException.class, () -> new Lookup(1, 0));
+  }
+}
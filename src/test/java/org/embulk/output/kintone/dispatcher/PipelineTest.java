@@ -0,0 +1,55 @@
+package org.embulk.output.kintone.dispatcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.embulk.config.ConfigException;
+import org.junit.Test;
+
+public class PipelineTest {
+  @Test
+  public void inOrder() {
+    List<Integer> actual = new ArrayList<>();
+    try (Pipeline pipeline = new Pipeline(1)) {
+      for (int i = 0; i < 10; i++) {
+        int value = i;
+        pipeline.put(() -> actual.add(value));
+      }
+      pipeline.await();
+    }
+    assertThat(actual, contains(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+  }
+
+  @Test
+  public void failure() {
+    List<Integer> actual = new ArrayList<>();
+    CountDownLatch latch = new CountDownLatch(1);
+    try (Pipeline pipeline = new Pipeline(4)) {
+      pipeline.put(
+          () -> {
+            try {
+              latch.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("failed");
+          });
+      pipeline.put(() -> actual.add(1));
+      latch.countDown();
+      IllegalStateException e = assertThrows(IllegalStateException.class, pipeline::await);
+      assertThat(e.getMessage(), is("failed"));
+      assertThrows(IllegalStateException.class, () -> pipeline.put(() -> actual.add(2)));
+    }
+    assertThat(actual.isEmpty(), is(true));
+  }
+
+  @Test
+  public void invalidQueueSize() {
+    assertThrows(ConfigException.class, () -> new Pipeline(0));
+  }
+}
@@ -0,0 +1,68 @@
+package org.embulk.output.kintone.dispatcher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.kintone.client.exception.KintoneApiRuntimeException;
+import com.kintone.client.exception.KintoneRuntimeException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.Optional;
+import org.embulk.output.kintone.KintoneErrorCodeRetryOption;
+import org.embulk.output.kintone.KintoneRetryOption;
+import org.junit.Test;
+
+public class RetryPoliciesTest {
+  @Test
+  public void errorCodes() {
+    RetryPolicies policies = new RetryPolicies(option());
+    assertThat(policies.of(error(409, "{\"code\":\"GAIA_RE18\"}")).getLimit(), is(3));
+    assertThat(
+        policies.of(error(400, "{\"results\":[{},{\"code\":\"GAIA_DA02\"}]}")).getLimit(), is(3));
+    assertThat(policies.of(error(400, "{\"code\":\"GAIA_XX01\"}")).getLimit(), is(5));
+    assertThat(policies.of(error(400, "{\"code\":\"CB_VA01\"}")), nullValue());
+  }
+
+  @Test
+  public void statusCodes() {
+    RetryPolicies policies = new RetryPolicies(option());
+    assertThat(policies.isRetryable(error(429, null)), is(true));
+    assertThat(policies.isRetryable(error(503, "<html></html>")), is(true));
+    assertThat(policies.isRetryable(error(500, null)), is(false));
+  }
+
+  @Test
+  public void transientErrors() {
+    RetryPolicies policies = new RetryPolicies(option());
+    assertThat(
+        policies.isRetryable(new KintoneRuntimeException("failed", new IOException("reset"))),
+        is(true));
+    assertThat(policies.isRetryable(new SocketTimeoutException("timeout")), is(true));
+    assertThat(
+        policies.isRetryable(new IllegalStateException(new IOException("callback"))), is(false));
+  }
+
+  private static KintoneApiRuntimeException error(int status, String content) {
+    KintoneApiRuntimeException exception = mock(KintoneApiRuntimeException.class);
+    when(exception.getStatusCode()).thenReturn(status);
+    when(exception.getContent()).thenReturn(content);
+    return exception;
+  }
+
+  private static KintoneRetryOption option() {
+    KintoneErrorCodeRetryOption errorCode = mock(KintoneErrorCodeRetryOption.class);
+    when(errorCode.getLimit()).thenReturn(Optional.of(5));
+    when(errorCode.getInitialWaitMillis()).thenReturn(Optional.empty());
+    when(errorCode.getMaxWaitMillis()).thenReturn(Optional.empty());
+    KintoneRetryOption option = mock(KintoneRetryOption.class);
+    when(option.getLimit()).thenReturn(3);
+    when(option.getInitialWaitMillis()).thenReturn(1);
+    when(option.getMaxWaitMillis()).thenReturn(4);
+    when(option.getErrorCodes()).thenReturn(Collections.singletonMap("GAIA_XX01", errorCode));
+    return option;
+  }
+}
@@ -0,0 +1,54 @@
+package org.embulk.output.kintone.index;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThrows;
+
+import java.io.File;
+import java.math.BigDecimal;
+import org.junit.Test;
+
+public class BloomFilterTest {
+  @Test
+  public void noFalseNegatives() {
+    BloomFilter filter = BloomFilter.create(10000, 0.01);
+    for (int i = 0; i < 10000; i++) {
+      filter.add("key" + i);
+    }
+    filter.add(new BigDecimal("1E+2"));
+    filter.add(null);
+    assertThat(filter.isExact(), is(false));
+    assertThat(filter.size(), is(10001));
+    for (int i = 0; i < 10000; i++) {
+      assertThat(filter.contains("key" + i), is(true));
+    }
+    assertThat(filter.contains("100"), is(true));
+    assertThat(filter.contains(null), is(false));
+    int falsePositives = 0;
+    for (int i = 10000; i < 20000; i++) {
+      if (filter.contains("key" + i)) {
+        falsePositives++;
+      }
+    }
+    assertThat(falsePositives, lessThan(300));
+  }
+
+  @Test
+  public void file() {
+    BloomFilter filter = BloomFilter.create(1000, 0.01);
+    for (long id = 1; id <= 1000; id++) {
+      filter.add(id);
+    }
+    String path = KeyIndexFile.write(filter);
+    KeyFilter index = KeyIndexFile.load(path);
+    assertThat(index.isExact(), is(false));
+    assertThrows(KeyIndexException.class, () -> KeyIndexFile.open(new File(path)).getIndex());
+    assertThat(index.size(), is(1000));
+    for (long id = 1; id <= 1000; id++) {
+      assertThat(index.contains(id), is(true));
+      assertThat(index.contains(String.valueOf(id)), is(true));
+    }
+    KeyIndexFile.delete(path);
+  }
+}
@@ -0,0 +1,48 @@
+package org.embulk.output.kintone.index;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThrows;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.embulk.config.ConfigException;
+import org.junit.Test;
+
+public class KeyCacheTest {
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    KeyCache cache = new KeyCache(2);
+    cache.put("a", 1L);
+    cache.put(new BigDecimal("1E+2"), 2L);
+    assertThat(cache.getAll(Collections.singletonList("a")).get("a"), is(1L));
+    cache.put("c", 3L);
+    cache.put(null, 4L);
+    Map<String, Long> cached = cache.getAll(Arrays.asList("a", "100", "c", null));
+    assertThat(cached.size(), is(2));
+    assertThat(cached.get("a"), is(1L));
+    assertThat(cached.get("100"), nullValue());
+    assertThat(cached.get("c"), is(3L));
+  }
+
+  @Test
+  public void getAllSurvivesEviction() {
+    // An upsert batch takes the cached keys, then the lookup of the rest fills the cache
+    KeyCache cache = new KeyCache(1);
+    cache.put("a", 1L);
+    Map<String, Long> cached = cache.getAll(Arrays.asList("a", "b"));
+    cache.put("b", 2L);
+    assertThat(cache.getAll(Collections.singletonList("a")).isEmpty(), is(true));
+    assertThat(cached.size(), is(1));
+    assertThat(cached.get("a"), is(1L));
+    assertThat(cache.getAll(Arrays.asList(new BigDecimal("2"), null)).size(), is(0));
+  }
+
+  @Test
+  public void invalidSize() {
+    assertThrows(ConfigException.class, () -> new KeyCache(-1));
+  }
+}
@@ -0,0 +1,93 @@
+package org.embulk.output.kintone.index;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class KeyIndexFileTest {
+  @Test
+  public void ids() {
+    KeyIndexBuilder builder = KeyIndexBuilder.of("$id");
+    for (long id = 5000; id > 0; id -= 2) {
+      builder.add(id);
+      builder.add(id);
+    }
+    String path = KeyIndexFile.write(builder.build());
+    KeyFilter index = KeyIndexFile.load(path);
+    assertThat(KeyIndexFile.load(path) == index, is(true));
+    assertThat(index.size(), is(2500));
+    assertThat(index.contains(2L), is(true));
+    assertThat(index.contains("5000"), is(true));
+    assertThat(index.contains(3L), is(false));
+    KeyIndexFile.delete(path);
+    assertThat(new File(path).exists(), is(false));
+  }
+
+  @Test
+  public void updateKeys() {
+    KeyIndexBuilder builder = KeyIndexBuilder.of("key");
+    for (int i = 0; i < 3000; i++) {
+      builder.add("key" + (i % 1000));
+      builder.add("キー" + i);
+    }
+    builder.add(new BigDecimal("1E+2"));
+    builder.add(null);
+    String path = KeyIndexFile.write(builder.build());
+    KeyFilter index = KeyIndexFile.load(path);
+    assertThat(index.size(), is(4001));
+    assertThat(index.contains("key0"), is(true));
+    assertThat(index.contains("key999"), is(true));
+    assertThat(index.contains("キー2999"), is(true));
+    assertThat(index.contains(new BigDecimal("100")), is(true));
+    assertThat(index.contains("key1000"), is(false));
+    assertThat(index.contains("キー3000"), is(false));
+    assertThat(index.contains(null), is(false));
+    KeyIndexFile.delete(path);
+  }
+
+  @Test
+  public void replace() throws IOException {
+    File directory = Files.createTempDirectory("key-index").toFile();
+    File file = new File(directory, "app.index");
+    KeyIndexBuilder builder = KeyIndexBuilder.of("key");
+    builder.add("b");
+    builder.add("a");
+    KeyIndexFile.write(file, "key", 1000, builder.build());
+    KeyIndexFile saved = KeyIndexFile.open(file);
+    assertThat(saved.getField(), is("key"));
+    assertThat(saved.getWatermark(), is(1000L));
+    List<Object> keys = new ArrayList<>();
+    saved.getIndex().forEach(keys::add);
+    assertThat(keys.toString(), is("[a, b]"));
+    assertThat(KeyIndexFile.load(file.getPath()).contains("c"), is(false));
+    builder = KeyIndexBuilder.of("key");
+    saved.getIndex().forEach(builder::add);
+    builder.add("c");
+    KeyIndexFile.write(file, "key", 2000, builder.build());
+    assertThat(KeyIndexFile.load(file.getPath()).contains("c"), is(true));
+    assertThat(saved.getIndex().contains("a"), is(true));
+    assertThat(KeyIndexFile.open(file).getWatermark(), is(2000L));
+    assertThat(directory.list().length, is(1));
+    KeyIndexFile.delete(file.getPath());
+    assertThat(directory.delete(), is(true));
+  }
+
+  @Test
+  public void broken() throws IOException {
+    File file = File.createTempFile("broken", ".index");
+    try (FileOutputStream output = new FileOutputStream(file)) {
+      output.write(new byte[] {0, 0, 0, 1, 'a', 0, 0});
+    }
+    assertThrows(KeyIndexException.class, () -> KeyIndexFile.open(file));
+    assertThat(file.delete(), is(true));
+  }
+}
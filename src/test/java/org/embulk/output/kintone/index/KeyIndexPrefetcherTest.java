@@ -0,0 +1,71 @@
+package org.embulk.output.kintone.index;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.kintone.client.RecordClient;
+import com.kintone.client.api.record.CreateCursorRequest;
+import com.kintone.client.api.record.CreateCursorResponseBody;
+import com.kintone.client.api.record.GetRecordsByCursorResponseBody;
+import com.kintone.client.exception.KintoneRuntimeException;
+import com.kintone.client.model.record.Record;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import org.embulk.output.kintone.KintoneClient;
+import org.embulk.output.kintone.KintoneRetryOption;
+import org.embulk.output.kintone.PluginTask;
+import org.junit.Test;
+
+public class KeyIndexPrefetcherTest {
+  @Test
+  public void retryCursor() {
+    CreateCursorResponseBody created = mock(CreateCursorResponseBody.class);
+    when(created.getId()).thenReturn("cursor");
+    GetRecordsByCursorResponseBody first = mock(GetRecordsByCursorResponseBody.class);
+    when(first.getRecords()).thenReturn(Arrays.asList(new Record(1L, 1L), new Record(2L, 1L)));
+    when(first.hasNext()).thenReturn(true);
+    GetRecordsByCursorResponseBody last = mock(GetRecordsByCursorResponseBody.class);
+    when(last.getRecords()).thenReturn(Collections.singletonList(new Record(3L, 1L)));
+    when(last.hasNext()).thenReturn(false);
+    RecordClient record = mock(RecordClient.class);
+    when(record.createCursor(any(CreateCursorRequest.class)))
+        .thenThrow(reset())
+        .thenReturn(created);
+    when(record.getRecordsByCursor("cursor"))
+        .thenReturn(first)
+        .thenThrow(reset())
+        .thenReturn(last);
+    KintoneClient client = mock(KintoneClient.class);
+    when(client.record()).thenReturn(record);
+    KeyIndex index = KeyIndexPrefetcher.prefetch(task(), client);
+    assertThat(index.size(), is(3));
+    assertThat(index.contains(1L), is(true));
+    assertThat(index.contains(3L), is(true));
+    verify(record, times(2)).createCursor(any(CreateCursorRequest.class));
+    verify(record, times(3)).getRecordsByCursor("cursor");
+    verify(record, never()).deleteCursor("cursor");
+  }
+
+  private static KintoneRuntimeException reset() {
+    return new KintoneRuntimeException("failed", new IOException("reset"));
+  }
+
+  private static PluginTask task() {
+    KintoneRetryOption option = mock(KintoneRetryOption.class);
+    when(option.getLimit()).thenReturn(3);
+    when(option.getInitialWaitMillis()).thenReturn(1);
+    when(option.getMaxWaitMillis()).thenReturn(4);
+    PluginTask task = mock(PluginTask.class);
+    when(task.getDomain()).thenReturn("prefetch.cybozu.com");
+    when(task.getAppId()).thenReturn(1);
+    when(task.getRetryOptions()).thenReturn(option);
+    return task;
+  }
+}
@@ -0,0 +1,36 @@
+package org.embulk.output.kintone.index;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.math.BigDecimal;
+import org.junit.Test;
+
+public class KeyIndexTest {
+  @Test
+  public void ids() {
+    KeySet index = KeySet.of("$id");
+    index.add(1L);
+    index.add(2L);
+    index.add(null);
+    assertThat(index.size(), is(2));
+    assertThat(index.contains(1L), is(true));
+    assertThat(index.contains("2"), is(true));
+    assertThat(index.contains(3L), is(false));
+    assertThat(index.contains("invalid"), is(false));
+    assertThat(index.contains(null), is(false));
+  }
+
+  @Test
+  public void updateKeys() {
+    KeySet index = KeySet.of("key");
+    index.add("a");
+    index.add(new BigDecimal("1E+3"));
+    assertThat(index.size(), is(2));
+    assertThat(index.contains("a"), is(true));
+    assertThat(index.contains("1000"), is(true));
+    assertThat(index.contains(new BigDecimal("1000")), is(true));
+    assertThat(index.contains("b"), is(false));
+    assertThat(index.contains(null), is(false));
+  }
+}
@@ -0,0 +1,94 @@
+package org.embulk.output.kintone.index;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import com.kintone.client.model.record.DateTimeFieldValue;
+import com.kintone.client.model.record.NumberFieldValue;
+import com.kintone.client.model.record.Record;
+import com.kintone.client.model.record.SingleLineTextFieldValue;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class LedgerTest {
+  @Test
+  public void write() throws IOException {
+    Map<String, Long> hashes = new HashMap<>();
+    for (int i = 0; i < 3000; i++) {
+      hashes.put("key" + i, (long) i);
+      hashes.put("キー" + i, (long) -i);
+    }
+    File file = new File(Files.createTempDirectory("ledger").toFile(), "app.ledger");
+    Ledger.of(hashes).write(file);
+    Ledger ledger = Ledger.load(file.getPath());
+    assertThat(Ledger.load(file.getPath()) == ledger, is(true));
+    assertThat(ledger.size(), is(6000));
+    assertThat(ledger.get("key0"), is(0L));
+    assertThat(ledger.get("key2999"), is(2999L));
+    assertThat(ledger.get("キー1"), is(-1L));
+    assertThat(ledger.get("key3000"), nullValue());
+    assertThat(ledger.get(null), nullValue());
+    Map<String, Long> read = new HashMap<>();
+    ledger.forEach(read::put);
+    assertThat(read, is(hashes));
+  }
+
+  @Test
+  public void merge() {
+    Map<String, Long> base = new HashMap<>();
+    base.put("a", 1L);
+    base.put("b", 2L);
+    base.put("d", 4L);
+    Map<String, Long> first = new HashMap<>();
+    first.put("b", 20L);
+    first.put("c", 30L);
+    first.put("f", 60L);
+    Map<String, Long> second = new HashMap<>();
+    second.put("b", 200L);
+    second.put("c", 30L);
+    second.put("e", 500L);
+    Ledger ledger =
+        Ledger.merge(Arrays.asList(Ledger.of(base), Ledger.of(first), Ledger.of(second)));
+    assertThat(ledger.size(), is(5));
+    assertThat(ledger.get("a"), is(1L));
+    assertThat(ledger.get("b"), is(nullValue()));
+    assertThat(ledger.get("c"), is(30L));
+    assertThat(ledger.get("d"), is(4L));
+    assertThat(ledger.get("e"), is(500L));
+    assertThat(ledger.get("f"), is(60L));
+    assertThat(Ledger.merge(Arrays.asList(Ledger.of(new HashMap<>()))).size(), is(0));
+  }
+
+  @Test
+  public void hash() {
+    Record record = new Record();
+    record.putField("key", new SingleLineTextFieldValue("key1"));
+    record.putField("number", new NumberFieldValue(new BigDecimal("1.50")));
+    record.putField(
+        "datetime",
+        new DateTimeFieldValue(ZonedDateTime.of(2020, 1, 1, 9, 0, 0, 0, ZoneId.of("Asia/Tokyo"))));
+    Record same = new Record();
+    same.putField(
+        "datetime",
+        new DateTimeFieldValue(ZonedDateTime.of(2020, 1, 1, 0, 0, 0, 0, ZoneId.of("UTC"))));
+    same.putField("number", new NumberFieldValue(new BigDecimal("1.5")));
+    same.putField("key", new SingleLineTextFieldValue("key2"));
+    Record changed = new Record();
+    changed.putField("key", new SingleLineTextFieldValue("key1"));
+    changed.putField("number", new NumberFieldValue(new BigDecimal("1.6")));
+    changed.putField(
+        "datetime",
+        new DateTimeFieldValue(ZonedDateTime.of(2020, 1, 1, 9, 0, 0, 0, ZoneId.of("Asia/Tokyo"))));
+    assertThat(Ledger.hash(record, "key") == Ledger.hash(same, "key"), is(true));
+    assertThat(Ledger.hash(record, "key") == Ledger.hash(changed, "key"), is(false));
+  }
+}
@@ -0,0 +1,38 @@
+package org.embulk.output.kintone.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.stream.LongStream;
+import org.junit.Test;
+
+public class LongHashSetTest {
+  @Test
+  public void addAndContains() {
+    LongHashSet set = new LongHashSet();
+    LongStream.rangeClosed(-1000, 1000).forEach(value -> assertThat(set.add(value * 7), is(true)));
+    assertThat(set.add(0), is(false));
+    assertThat(set.add(7000), is(false));
+    assertThat(set.size(), is(2001));
+    LongStream.rangeClosed(-1000, 1000)
+        .forEach(
+            value -> {
+              assertThat(set.contains(value * 7), is(true));
+              assertThat(set.contains(value * 7 + 1), is(false));
+            });
+  }
+
+  @Test
+  public void forEach() {
+    LongHashSet set = new LongHashSet();
+    LongStream.rangeClosed(0, 100).forEach(set::add);
+    long[] sum = new long[2];
+    set.forEach(
+        value -> {
+          sum[0] += value;
+          sum[1]++;
+        });
+    assertThat(sum[0], is(5050L));
+    assertThat(sum[1], is(101L));
+  }
+}